@@ -0,0 +1,140 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Resolves a batch of DOIs by fanning out to the external service. A batch keeps at most a bounded number of its
+ * lookups in flight, and starts the next lookup as one completes, so a batch never holds a thread. The calls to the
+ * external service are additionally limited by the connector, which is shared with the single lookups.
+ *
+ * At most a bounded number of batches are resolved at a time. A batch over the limit is rejected rather than
+ * queued, so its time starts when it is accepted. Cancelling the future of a batch stops starting its lookups.
+ *
+ * The limits are configured by the environment variables PASS_DOI_SERVICE_BATCH_CONCURRENCY (default 4 lookups per
+ * batch) and PASS_DOI_SERVICE_MAX_BATCHES (default 2 batches).
+ *
+ * @see PassDoiServiceController
+ */
+class DoiBatchResolver {
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final int DEFAULT_MAX_BATCHES = 2;
+
+    private final int concurrency;
+    private final int maxBatches;
+    private final AtomicInteger runningBatches = new AtomicInteger();
+
+    /**
+     * Initializes the resolver from the environment, falling back to the defaults.
+     */
+    DoiBatchResolver() {
+        this(System.getenv("PASS_DOI_SERVICE_BATCH_CONCURRENCY") != null ?
+             Integer.parseInt(System.getenv("PASS_DOI_SERVICE_BATCH_CONCURRENCY")) : DEFAULT_CONCURRENCY,
+             System.getenv("PASS_DOI_SERVICE_MAX_BATCHES") != null ?
+             Integer.parseInt(System.getenv("PASS_DOI_SERVICE_MAX_BATCHES")) : DEFAULT_MAX_BATCHES);
+    }
+
+    /**
+     * Initializes the resolver with the supplied arguments.
+     *
+     * @param concurrency the maximum number of lookups of a batch in flight at a time
+     * @param maxBatches the maximum number of batches resolved at a time
+     */
+    DoiBatchResolver(int concurrency, int maxBatches) {
+        this.concurrency = concurrency;
+        this.maxBatches = maxBatches;
+    }
+
+    /**
+     * Get the maximum number of batches resolved at a time
+     * @return the maximum number of batches
+     */
+    int getMaxBatches() {
+        return maxBatches;
+    }
+
+    /**
+     * Starts the lookups of a batch of DOIs
+     *
+     * @param dois the DOIs to look up
+     * @param lookup starts the lookup of a doi, the returned future completes when the result has been handled
+     * @return a future which completes when the lookups of all DOIs have completed, cancelling it stops the batch
+     * @throws RejectedExecutionException if the maximum number of batches are already being resolved
+     */
+    CompletableFuture<Void> resolve(List<String> dois, Function<String, CompletableFuture<?>> lookup) {
+        if (runningBatches.incrementAndGet() > maxBatches) {
+            runningBatches.decrementAndGet();
+            throw new RejectedExecutionException("Too many batches in progress");
+        }
+        Batch batch = new Batch(dois, lookup);
+        batch.result.whenComplete((value, error) -> runningBatches.decrementAndGet());
+        batch.startLookups(Math.min(concurrency, dois.size()));
+        return batch.result;
+    }
+
+    private static class Batch {
+        private final List<String> dois;
+        private final Function<String, CompletableFuture<?>> lookup;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger completedCount = new AtomicInteger();
+        //lookups to start, counted so that lookups completing synchronously do not recurse
+        private final AtomicInteger pendingStarts = new AtomicInteger();
+
+        private Batch(List<String> dois, Function<String, CompletableFuture<?>> lookup) {
+            this.dois = dois;
+            this.lookup = lookup;
+            if (dois.isEmpty()) {
+                result.complete(null);
+            }
+        }
+
+        private void startLookups(int count) {
+            if (pendingStarts.getAndAdd(count) > 0) {
+                return;
+            }
+            do {
+                startLookup();
+            } while (pendingStarts.decrementAndGet() > 0);
+        }
+
+        private void startLookup() {
+            int index = nextIndex.getAndIncrement();
+            if (result.isDone() || index >= dois.size()) {
+                return;
+            }
+            CompletableFuture<?> started;
+            try {
+                started = lookup.apply(dois.get(index));
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((value, error) -> {
+                if (completedCount.incrementAndGet() == dois.size()) {
+                    result.complete(null);
+                } else {
+                    startLookups(1);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.json.JsonObject;
+
+/**
+ * A size-bounded cache of the JSON objects returned by external DOI services, keyed by the name of the service and
+ * the DOI. Found records are kept for the TTL of the cache, records the external service could not find are kept
+ * for the shorter not found TTL, so a DOI which is registered later is picked up soon. When the cache is full the
+ * least recently used entry is evicted. A TTL of zero disables caching of the corresponding records.
+ *
+ * The cache is configured by the environment variables PASS_DOI_SERVICE_CACHE_SIZE (default 1000 entries),
+ * PASS_DOI_SERVICE_CACHE_TTL (default 3600 seconds) and PASS_DOI_SERVICE_CACHE_NOT_FOUND_TTL (default 300 seconds).
+ *
+ * @see ExternalDoiServiceConnector
+ */
+class DoiMetadataCache {
+    static final int DEFAULT_SIZE = 1000;
+    static final Duration DEFAULT_TTL = Duration.ofHours(1);
+    static final Duration DEFAULT_NOT_FOUND_TTL = Duration.ofMinutes(5);
+
+    private final Map<String, CachedMetadata> entries;
+    private final long ttlNanos;
+    private final long notFoundTtlNanos;
+
+    /**
+     * Initializes the cache from the environment, falling back to the defaults.
+     */
+    DoiMetadataCache() {
+        this(envInt("PASS_DOI_SERVICE_CACHE_SIZE", DEFAULT_SIZE),
+             envSeconds("PASS_DOI_SERVICE_CACHE_TTL", DEFAULT_TTL),
+             envSeconds("PASS_DOI_SERVICE_CACHE_NOT_FOUND_TTL", DEFAULT_NOT_FOUND_TTL));
+    }
+
+    /**
+     * Initializes the cache with the supplied arguments.
+     *
+     * @param maxSize the maximum number of cached records
+     * @param ttl how long a found record is cached
+     * @param notFoundTtl how long a record the external service could not find is cached
+     */
+    DoiMetadataCache(int maxSize, Duration ttl, Duration notFoundTtl) {
+        this.ttlNanos = ttl.toNanos();
+        this.notFoundTtlNanos = notFoundTtl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedMetadata> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached record for a doi, if it has not expired
+     *
+     * @param doi the doi
+     * @param service the external service the record was returned by
+     * @return the cached JSON object, or null if there is none
+     */
+    JsonObject get(String doi, ExternalDoiService service) {
+        String key = key(doi, service);
+        synchronized (entries) {
+            CachedMetadata entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.metadata;
+        }
+    }
+
+    /**
+     * Caches a record the external service returned for a doi
+     *
+     * @param doi the doi
+     * @param service the external service the record was returned by
+     * @param metadata the JSON object returned by the external service
+     */
+    void put(String doi, ExternalDoiService service, JsonObject metadata) {
+        put(key(doi, service), metadata, ttlNanos);
+    }
+
+    /**
+     * Caches the response of an external service which could not find a doi
+     *
+     * @param doi the doi
+     * @param service the external service the response was returned by
+     * @param metadata the JSON object representing the not found response
+     */
+    void putNotFound(String doi, ExternalDoiService service, JsonObject metadata) {
+        put(key(doi, service), metadata, notFoundTtlNanos);
+    }
+
+    private void put(String key, JsonObject metadata, long ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new CachedMetadata(metadata, System.nanoTime() + ttl));
+        }
+    }
+
+    //DOIs are case-insensitive
+    static String key(String doi, ExternalDoiService service) {
+        return service.name() + " " + doi.toLowerCase(Locale.ROOT);
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static Duration envSeconds(String name, Duration defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Duration.ofSeconds(Long.parseLong(value)) : defaultValue;
+    }
+
+    private static class CachedMetadata {
+        private final JsonObject metadata;
+        private final long expiresAtNanos;
+
+        private CachedMetadata(JsonObject metadata, long expiresAtNanos) {
+            this.metadata = metadata;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -58,8 +58,7 @@ public class ElideConnector {
     }
 
     /**
-     * This is the only method interfacing with the repo that the Servlet calls -
-     * it orchestrates the process of building a Journal object from the supplied JSON object,
+     * This method orchestrates the process of building a Journal object from the supplied JSON object,
      * seeing if the Journal is present in PASS, creating or updating that Journal if needed,
      * and finally returning the PASS id for the Journal
      *
@@ -67,16 +66,33 @@ public class ElideConnector {
      * @return the id of the corresponding Journal object in PASS
      */
     protected String resolveJournal(JsonObject xrefJsonObject) {
+        Journal journal;
+        try {
+            // we have something JSONy, let's build a journal object from it
+            LOG.debug("Building pass journal");
+            journal = buildPassJournal(xrefJsonObject);
+        } catch (Exception e) {
+            LOG.error(e.getMessage());
+            return null;
+        }
+        return resolveJournal(journal);
+    }
+
+    /**
+     * Sees if the Journal built from Crossref metadata is present in PASS, creates or updates that Journal if
+     * needed, and returns the PASS id for the Journal. Callers which resolve many DOIs call this once for each
+     * distinct Journal, since many DOIs share one.
+     *
+     * @param journal the Journal object built from Crossref metadata
+     * @return the id of the corresponding Journal object in PASS
+     */
+    protected String resolveJournal(Journal journal) {
 
         String journalId = null;
 
         try (PassClient passClient = getNewClient()) {
 
-            // we have something JSONy, let's build a journal object from it
-            LOG.debug("Building pass journal");
-            Journal journal = buildPassJournal(xrefJsonObject);
-
-            // and compare it with what we already have in PASS, updating PASS if necessary
+            // compare it with what we already have in PASS, updating PASS if necessary
             LOG.debug("Comparing journal object with possible PASS version");
             Journal updatedJournal = updateJournalInPass(journal, passClient);
 
@@ -16,12 +16,7 @@
  */
 package org.eclipse.pass.doi.service;
 
-import static java.lang.Thread.sleep;
-
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.json.JsonObject;
@@ -38,8 +33,6 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class ExternalDoiService {
     private static final Logger LOG = LoggerFactory.getLogger(ExternalDoiService.class);
-    private final Set<String> activeJobSet = new HashSet<>();
-    private final Set<String> syncActiveJobSet = Collections.synchronizedSet(activeJobSet);
 
     String MAILTO = "pass@jhu.edu";
 
@@ -93,61 +86,4 @@ public abstract class ExternalDoiService {
         Matcher matcher = pattern.matcher(suffix);
         return matcher.matches() ? suffix : null;
     }
-
-    /**
-     * this simply protects the external service from a person hammering on a request thinking
-     * it wasn't processed, when it really is just slow coming back
-     *
-     * @param doi the doi to check active
-     * @return whether the doi lookup is still active
-     */
-    boolean isAlreadyActive(String doi) {
-        //check cache map for existence of doi
-        //put doi on map if absent
-        LOG.debug("Checking to see if doi " + doi + " is already in process");
-        if (syncActiveJobSet.contains(doi)) {
-            return true;
-        } else {
-            // this DOI is not actively being processed
-            // let's temporarily prohibit new requests for this DOI
-            syncActiveJobSet.add(doi);
-            //longest time we expect it should take to create a Journal object, in
-            //milliseconds
-            int cachePeriod = 30000;
-            Thread t = new Thread(new ExternalDoiService.ExpiringLock(doi, cachePeriod));
-            t.start();
-        }
-        return false;
-    }
-
-    /**
-     * Once a doi has been processed, this method removes it from the locked list.
-     * @param doi the doi
-     */
-    void unlockDoi(String doi) {
-        syncActiveJobSet.remove(doi);
-    }
-
-    /**
-     * A class to manage locking so that an active process for a DOI will finish executing before
-     * another one begins
-     */
-    public class ExpiringLock implements Runnable {
-        private final String key;
-        private final int duration;
-
-        ExpiringLock(String key, int duration) {
-            this.key = key;
-            this.duration = duration;
-        }
-
-        public void run() {
-            try {
-                sleep(duration);
-                syncActiveJobSet.remove(key);
-            } catch (InterruptedException e) {
-                syncActiveJobSet.remove(key);
-            }
-        }
-    }
 }
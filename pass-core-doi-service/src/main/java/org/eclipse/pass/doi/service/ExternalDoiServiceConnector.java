@@ -16,17 +16,26 @@
  */
 package org.eclipse.pass.doi.service;
 
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
 import javax.json.stream.JsonParsingException;
 
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -43,9 +52,65 @@ import org.slf4j.LoggerFactory;
 public class ExternalDoiServiceConnector {
     private static final Logger LOG = LoggerFactory.getLogger(ExternalDoiServiceConnector.class);
 
+    //longest time a call to an external service may take once the limiter started it, time spent waiting in the
+    //queue of the limiter does not count
+    static final Duration LOOKUP_TIMEOUT = Duration.ofSeconds(60);
+
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final double DEFAULT_RATE = 10;
+
     private final OkHttpClient client;
+    private final DoiMetadataCache cache;
+    //lookups are not expired by the coalescer, the calls they share are bounded by the lookup timeout instead
+    private final RequestCoalescer<JsonObject> lookups = new RequestCoalescer<>();
+    //calls to an external service are limited per service, for single and batched lookups alike
+    private final Map<String, RequestLimiter> limiters = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService limiterScheduler;
+    private final int concurrency;
+    private final double rate;
+    private final Duration lookupTimeout;
 
     ExternalDoiServiceConnector() {
+        this(new DoiMetadataCache());
+    }
+
+    ExternalDoiServiceConnector(DoiMetadataCache cache) {
+        this(cache,
+             System.getenv("PASS_DOI_SERVICE_CONCURRENCY") != null ?
+             Integer.parseInt(System.getenv("PASS_DOI_SERVICE_CONCURRENCY")) : DEFAULT_CONCURRENCY,
+             System.getenv("PASS_DOI_SERVICE_RATE") != null ?
+             Double.parseDouble(System.getenv("PASS_DOI_SERVICE_RATE")) : DEFAULT_RATE);
+    }
+
+    /**
+     * Initializes the connector with the supplied arguments.
+     *
+     * @param cache the cache of the records returned by the external services
+     * @param concurrency the maximum number of calls to an external service in flight at a time
+     * @param rate the maximum number of calls to an external service started per second
+     */
+    ExternalDoiServiceConnector(DoiMetadataCache cache, int concurrency, double rate) {
+        this(cache, concurrency, rate, LOOKUP_TIMEOUT);
+    }
+
+    /**
+     * Initializes the connector with the supplied arguments.
+     *
+     * @param cache the cache of the records returned by the external services
+     * @param concurrency the maximum number of calls to an external service in flight at a time
+     * @param rate the maximum number of calls to an external service started per second
+     * @param lookupTimeout the longest time a call to an external service may take once it is started
+     */
+    ExternalDoiServiceConnector(DoiMetadataCache cache, int concurrency, double rate, Duration lookupTimeout) {
+        this.cache = cache;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.lookupTimeout = lookupTimeout;
+        this.limiterScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "doi-service-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
         OkHttpClient.Builder builder = new OkHttpClient.Builder();
         builder.connectTimeout(30, SECONDS);
         builder.readTimeout(30, SECONDS);
@@ -54,12 +119,71 @@ public class ExternalDoiServiceConnector {
     }
 
     /**
-     * consult external service to get a json object for a supplied doi
+     * consult external service to get a json object for a supplied doi. Found records and records the external
+     * service could not find are cached, so repeated lookups of a doi do not call the external service again.
+     * Concurrent lookups of a doi share one call to the external service.
      *
      * @param doi - the supplied doi string, prefix trimmed if necessary
      * @return a string representing the works object if successful; an empty string if not found; null if IO exception
      */
     JsonObject retrieveMetadata(String doi, ExternalDoiService service) {
+        return retrieveMetadataAsync(doi, service).join();
+    }
+
+    /**
+     * consult external service to get a json object for a supplied doi, without blocking the calling thread. The
+     * call to the external service is made on the dispatcher of the HTTP client, the returned future completes on
+     * one of its threads.
+     *
+     * @param doi - the supplied doi string, prefix trimmed if necessary
+     * @return a future of the works object if successful; an error object if not found; null if IO exception
+     */
+    CompletableFuture<JsonObject> retrieveMetadataAsync(String doi, ExternalDoiService service) {
+        JsonObject cachedJsonObject = cache.get(doi, service);
+        if (cachedJsonObject != null) {
+            LOG.debug("Returning cached " + service.name() + " metadata for doi " + doi);
+            return CompletableFuture.completedFuture(cachedJsonObject);
+        }
+
+        //the lookup caches its result before it is released, so a later lookup finds it in the cache
+        RequestLimiter limiter = limiters.computeIfAbsent(service.name(),
+            name -> new RequestLimiter(concurrency, rate, limiterScheduler));
+        return lookups.execute(DoiMetadataCache.key(doi, service),
+                               () -> limiter.submit(() -> fetchMetadata(doi, service)))
+                      .exceptionally(e -> {
+                          LOG.error("The lookup of " + service.name() + " metadata for doi " + doi + " failed: " + e);
+                          return null;
+                      });
+    }
+
+    /**
+     * Gets the least time a number of lookups calling an external service take at the rate of the connector
+     *
+     * @param lookups the number of lookups
+     * @return the duration in milliseconds
+     */
+    long getMinimumDurationMillis(int lookups) {
+        return (long) (lookups * 1000 / rate);
+    }
+
+    /**
+     * Stops the scheduling of calls to the external services.
+     */
+    void shutdown() {
+        limiterScheduler.shutdownNow();
+    }
+
+    /**
+     * Gets the cached json object for a supplied doi, without calling the external service
+     *
+     * @param doi - the supplied doi string, prefix trimmed if necessary
+     * @return the cached json object, or null if the doi is not cached
+     */
+    JsonObject getCachedMetadata(String doi, ExternalDoiService service) {
+        return cache.get(doi, service);
+    }
+
+    private CompletableFuture<JsonObject> fetchMetadata(String doi, ExternalDoiService service) {
         LOG.debug("Attempting to retrieve " + service.name() + "metadata for doi " + doi);
 
         HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(service.baseUrl() + doi)).newBuilder();
@@ -79,30 +203,70 @@ public class ExternalDoiServiceConnector {
         }
         Request okHttpRequest =  requestBuilder.build();
 
-        Call call = client.newCall(okHttpRequest);
+        CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        Call okHttpCall = client.newCall(okHttpRequest);
+        okHttpCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOG.error(e.getMessage(), e);
+                result.complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response okHttpResponse) {
+                try (okHttpResponse) {
+                    result.complete(readMetadata(doi, service, okHttpResponse));
+                } catch (IOException e) {
+                    LOG.error(e.getMessage(), e);
+                    result.complete(null);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        //the timeout starts once the limiter started the call, a call which times out is cancelled so it does not
+        //hold on to a connection after its permit of the limiter has been released
+        return result.orTimeout(lookupTimeout.toMillis(), MILLISECONDS)
+                     .whenComplete((metadata, error) -> {
+                         if (error != null) {
+                             okHttpCall.cancel();
+                         }
+                     });
+    }
+
+    private JsonObject readMetadata(String doi, ExternalDoiService service, Response okHttpResponse)
+        throws IOException {
         JsonReader reader;
         JsonObject metadataJsonObject;
-        String responseString = null;
+        int responseCode = okHttpResponse.code();
+        String responseString = Objects.requireNonNull(okHttpResponse.body()).string();
 
-        try (Response okHttpResponse = call.execute()) {
-            responseString = Objects.requireNonNull(okHttpResponse.body()).string();
+        try {
             reader = Json.createReader(new StringReader(responseString));
             metadataJsonObject = reader.readObject();
             reader.close();
 
-            service.unlockDoi(doi);
+            cacheResponse(doi, service, responseCode, metadataJsonObject);
 
             return metadataJsonObject;
         } catch (JsonParsingException e) {
-            if (responseString != null) {
-                return Json.createObjectBuilder()
-                           .add("error", responseString)
-                           .build();
+            JsonObject errorJsonObject = Json.createObjectBuilder()
+                                             .add("error", responseString)
+                                             .build();
+            if (responseCode == HTTP_NOT_FOUND) {
+                cache.putNotFound(doi, service, errorJsonObject);
             }
-        } catch (IOException e) {
-            LOG.error(e.getMessage(), e);
+            return errorJsonObject;
+        }
+    }
+
+    //only definite answers are cached, errors of the external service are retried on the next lookup
+    private void cacheResponse(String doi, ExternalDoiService service, int responseCode, JsonObject metadata) {
+        if (responseCode == HTTP_NOT_FOUND) {
+            cache.putNotFound(doi, service, metadata);
+        } else if (responseCode >= 200 && responseCode < 300) {
+            cache.put(doi, service, metadata);
         }
-        return null;
     }
 
 }
@@ -17,158 +17,195 @@
 package org.eclipse.pass.doi.service;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 
 import com.yahoo.elide.RefreshableElide;
+import org.eclipse.pass.object.model.Journal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
 /**
  * This class defines DOI service endpoints and orchestrates responses
  *
+ * The endpoints are asynchronous: the servlet thread is released while the external service is called, and the
+ * response is completed on the thread which finishes the lookup. Slow external services therefore do not hold on to
+ * the servlet threads which serve the rest of PASS. The Journal in PASS is resolved on a small pool of its own, since
+ * it blocks on the data store.
+ *
  * @author jrm
  */
 @RestController
 public class PassDoiServiceController {
 
     private static final Logger LOG = LoggerFactory.getLogger(PassDoiServiceController.class);
+    private static final MediaType JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
+    private static final MediaType NDJSON_UTF8 = new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+    //longer than the lookup timeout of the connector, so a slow lookup gets its own error response
+    private static final long RESPONSE_TIMEOUT_MILLIS = 120000;
+    private static final int JOURNAL_THREADS = 4;
+    private static final int MAX_BATCH_SIZE = 10000;
+
     ElideConnector elideConnector;
     ExternalDoiServiceConnector externalDoiServiceConnector;
     ExternalDoiService xrefDoiService;
     ExternalDoiService unpaywallDoiService;
+    //lookups of DOIs in the same journal must not create the journal twice, a hung resolution expires like a lookup
+    RequestCoalescer<String> journalResolutions =
+        new RequestCoalescer<>(ExternalDoiServiceConnector.LOOKUP_TIMEOUT);
+    ExecutorService journalExecutor;
+    DoiBatchResolver batchResolver;
 
     PassDoiServiceController(RefreshableElide refreshableElide) {
         this.elideConnector = new ElideConnector(refreshableElide);
         this.externalDoiServiceConnector = new ExternalDoiServiceConnector();
         this.xrefDoiService = new XrefDoiService();
         this.unpaywallDoiService = new UnpaywallDoiService();
+        this.batchResolver = new DoiBatchResolver();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.journalExecutor = Executors.newFixedThreadPool(JOURNAL_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "doi-service-journal-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops the threads calling the external services and resolving Journals.
+     */
+    @PreDestroy
+    public void shutdown() {
+        externalDoiServiceConnector.shutdown();
+        journalExecutor.shutdownNow();
     }
 
     @GetMapping("/doi/journal")
-    protected void getXrefMetadata(HttpServletRequest request, HttpServletResponse response)
-        throws IOException {
+    protected DeferredResult<ResponseEntity<String>> getXrefMetadata(HttpServletRequest request) {
 
         ExternalDoiService externalService = xrefDoiService;
 
-        response.setContentType("application/json");
-        response.setCharacterEncoding("utf-8");
-
         LOG.info("Servicing new " + externalService.name() + " request ... ");
         LOG.debug("Context path: " + request.getContextPath() + "; query string " + request.getQueryString());
 
+        DeferredResult<ResponseEntity<String>> result = newDeferredResult(externalService);
+
         //we will call out to crossref and collect the work JSON object
         //the value of this parameter is expected to be already URIencoded
         String doi = request.getParameter("doi");
 
-        //stage 1: verify doi is valid
-        if (externalService.verify(doi) == null) {
-            // do not have have a valid xref doi
-            try (OutputStream out = response.getOutputStream()) {
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", "Supplied DOI is not in valid DOI format.")
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(400);
-                return;
-            }
-        }
+        lookupJournal(doi, new ConcurrentHashMap<>())
+            .whenComplete((response, error) -> setResult(result, externalService, doi, response, error));
+        return result;
+    }
 
-        //Stage 2: make sure we don't already have a request being processed for this doi
-        if (externalService.isAlreadyActive(doi)) {
-            // return already processing error (429>)
-            try (OutputStream out = response.getOutputStream()) {
-                String message = "There is already an active request for " + doi;
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message + "; try again later.")
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(429);
-                LOG.info(message);
-            }
+    /**
+     * Resolves a batch of DOIs like the /doi/journal endpoint. The request body is a JSON array of DOIs. The
+     * response is a stream of newline delimited JSON objects, one for each distinct DOI, in the order the lookups
+     * complete. Each object has the doi and the HTTP status the /doi/journal endpoint would respond with, and either
+     * the journal-id and crossref object, or the error. A batch over the number of batches resolved at a time is
+     * rejected with a 503 response.
+     *
+     * @param body the JSON array of DOIs
+     * @return the stream of results
+     */
+    @PostMapping("/doi/journal/batch")
+    protected ResponseEntity<ResponseBodyEmitter> getXrefMetadataBatch(@RequestBody String body) {
+
+        ExternalDoiService externalService = xrefDoiService;
+
+        List<String> dois;
+        try {
+            dois = parseDois(body);
+        } catch (JsonException | ClassCastException e) {
+            return batchErrorResponse(400, "The request body must be a JSON array of DOIs.");
+        }
+        if (dois.size() > MAX_BATCH_SIZE) {
+            return batchErrorResponse(400, "A batch may have at most " + MAX_BATCH_SIZE + " DOIs.");
         }
 
-        //stage 3: try to get crossref record, catch errors first, and halt processing
-        JsonObject xrefJsonObject = externalDoiServiceConnector.retrieveMetadata(doi, externalService);
-        if (xrefJsonObject == null) {
-            try (OutputStream out = response.getOutputStream()) {
-                String message = "There was an error getting the metadata from " +
-                                 externalService.name() + " for " + doi;
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message)
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(500);
-                LOG.info(message);
-            }
-        } else if (xrefJsonObject.getJsonString("error") != null) {
-            int responseCode;
-            String message;
-            if (xrefJsonObject.getString("error").equals("Resource not found.")) {
-                responseCode = 404;
-                message = "The resource for DOI " + doi + " could not be found on " + externalService.name() + ".";
-            } else {
-                responseCode = 500;
-                message = "A record for this resource could not be returned from " + externalService.name() + ": " +
-                          xrefJsonObject.getJsonString("error");
-            }
-            try (OutputStream out = response.getOutputStream()) {
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message)
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(responseCode);
-                LOG.info(message);
-            }
-        } else {
-            // have a non-empty string to process
-            String journalId = elideConnector.resolveJournal(xrefJsonObject);
-            if (journalId != null) {
-
-                try (OutputStream out = response.getOutputStream()) {
-                    JsonObject jsonObject = Json.createObjectBuilder()
-                                                .add("journal-id", journalId)
-                                                .add("crossref", xrefJsonObject)
-                                                .build();
-
-                    out.write(jsonObject.toString().getBytes());
-                    response.setStatus(200);
-                    LOG.info("Returning result for DOI " + doi);
+        LOG.info("Servicing new " + externalService.name() + " batch request for " + dois.size() + " DOIs ... ");
+
+        //the calls to the external service are shared with the other batches in progress, and the single lookups
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(RESPONSE_TIMEOUT_MILLIS +
+            externalDoiServiceConnector.getMinimumDurationMillis(dois.size() * batchResolver.getMaxBatches()));
+        //each distinct journal of the batch is resolved once
+        Map<String, CompletableFuture<String>> journalIds = new ConcurrentHashMap<>();
+
+        CompletableFuture<Void> batch;
+        try {
+            batch = batchResolver.resolve(dois, doi -> lookupJournal(doi, journalIds).handle((response, error) -> {
+                if (error != null) {
+                    LOG.error("Processing the " + externalService.name() + " request for " + doi + " failed", error);
+                    response = errorResponse(500, "There was an error processing the request for " + doi);
                 }
+                send(emitter, batchLine(doi, response));
+                return null;
+            }));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Rejecting " + externalService.name() + " batch request: " + e.getMessage());
+            return batchErrorResponse(503, "Too many batch requests in progress, please try again later.");
+        }
 
+        //stop looking up DOIs once the response is done, e.g. when it timed out or the client went away
+        emitter.onTimeout(() -> batch.cancel(false));
+        emitter.onError(error -> batch.cancel(false));
+        emitter.onCompletion(() -> batch.cancel(false));
+
+        batch.whenComplete((done, error) -> {
+            if (error instanceof CancellationException) {
+                LOG.info("Stopped " + externalService.name() + " batch request for " + dois.size() + " DOIs");
+            } else if (error != null) {
+                LOG.error("Processing the " + externalService.name() + " batch request failed", error);
+                emitter.completeWithError(error);
             } else {
-                // journal id is null - this should never happen unless Crosssref journal is insufficient
-                // for example, if a book doi ws supplied which has no issns
-                try (OutputStream out = response.getOutputStream()) {
-                    String message = "Insufficient information to locate or specify a journal entry.";
-                    JsonObject jsonObject = Json.createObjectBuilder()
-                                                .add("error", message)
-                                                .build();
-                    out.write(jsonObject.toString().getBytes());
-                    response.setStatus(422);
-                    LOG.info(message);
-                }
+                LOG.info("Returning " + externalService.name() + " results for " + dois.size() + " DOIs");
+                emitter.complete();
             }
-        }
+        });
+
+        return ResponseEntity.ok().contentType(NDJSON_UTF8).body(emitter);
     }
 
     @GetMapping("/doi/manuscript")
-    protected void getUnpaywallMetadata(HttpServletRequest request, HttpServletResponse response)
-        throws IOException {
+    protected DeferredResult<ResponseEntity<String>> getUnpaywallMetadata(HttpServletRequest request) {
 
         ExternalDoiService externalService = unpaywallDoiService;
 
-        response.setContentType("application/json");
-        response.setCharacterEncoding("utf-8");
-
         LOG.info("Servicing new " + externalService.name() + " request ... ");
         LOG.debug("Context path: " + request.getContextPath() + "; query string " + request.getQueryString());
 
+        DeferredResult<ResponseEntity<String>> result = newDeferredResult(externalService);
+
         //we will call out to unpaywall and collect the JSON object
         //the value of this parameter is expected to be already URIencoded
         String doi = request.getParameter("doi");
@@ -176,74 +213,186 @@ public class PassDoiServiceController {
         //stage 1: verify doi is valid
         if (externalService.verify(doi) == null) {
             // do not have have a valid doi
-            try (OutputStream out = response.getOutputStream()) {
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", "Supplied DOI is not in valid DOI format.")
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(400);
-                return;
-            }
+            result.setResult(jsonResponse(errorResponse(400, "Supplied DOI is not in valid DOI format.")));
+            return result;
         }
 
-        //Stage 2: make sure we don't already have a request being processed for this doi
-        if (externalService.isAlreadyActive(doi)) {
-            // return already processing error (429)
-            try (OutputStream out = response.getOutputStream()) {
-                String message = "There is already an active request for " + doi;
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message + "; try again later.")
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(429);
-                LOG.info(message);
-            }
+        //stage 2: try to get unpaywall record, catch errors first, and halt processing
+        externalDoiServiceConnector.retrieveMetadataAsync(doi, externalService)
+            .thenApply(unpaywallJsonObject -> {
+                if (unpaywallJsonObject == null) {
+                    String message = "There was an error getting the metadata from " +
+                                     externalService.name() + " for " + doi;
+                    LOG.info(message);
+                    return errorResponse(500, message);
+                } else if (unpaywallJsonObject.getValue("/error").toString().equals("true") ) {
+                    int responseCode;
+                    String message;
+
+                    if (unpaywallJsonObject.getValue("/HTTP_status_code") != null &&
+                        unpaywallJsonObject.getValue("/message") != null) {
+
+                        responseCode = Integer.parseInt(unpaywallJsonObject.getValue("/HTTP_status_code").toString());
+                        message = unpaywallJsonObject.getValue("/message").toString();
+                    } else {
+                        responseCode = 500;
+                        message = "A record for this resource could not be returned from Unpaywall: " +
+                                  unpaywallJsonObject.getJsonString("error");
+                    }
+                    LOG.info(message);
+                    return errorResponse(responseCode, message);
+                }
+                // have a non-empty JSON string to process
+                JsonObject jsonObject = externalService.processObject(unpaywallJsonObject);
+                LOG.info("Returning " + externalService.name() + " result for DOI " + doi);
+                return ResponseEntity.ok(jsonObject);
+            })
+            .whenComplete((response, error) -> setResult(result, externalService, doi, response, error));
+        return result;
+    }
+
+    /**
+     * Looks up the crossref record of a doi and resolves its Journal in PASS
+     *
+     * @param doi the doi
+     * @param journalIds the Journals resolved so far, by journal name and issns
+     * @return the response of the /doi/journal endpoint
+     */
+    private CompletableFuture<ResponseEntity<JsonObject>> lookupJournal(String doi,
+                                                                        Map<String, CompletableFuture<String>>
+                                                                            journalIds) {
+        ExternalDoiService externalService = xrefDoiService;
+
+        //stage 1: verify doi is valid
+        if (externalService.verify(doi) == null) {
+            // do not have have a valid xref doi
+            return CompletableFuture.completedFuture(errorResponse(400, "Supplied DOI is not in valid DOI format."));
         }
 
-        //stage 3: try to get unpaywall record, catch errors first, and halt processing
-        JsonObject unpaywallJsonObject = externalDoiServiceConnector.retrieveMetadata(doi, externalService);
-        if (unpaywallJsonObject == null) {
-            try (OutputStream out = response.getOutputStream()) {
-                String message = "There was an error getting the metadata from " +
-                                 externalService.name() + " for " + doi;
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message)
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(500);
-                LOG.info(message);
-            }
-        } else if (unpaywallJsonObject.getValue("/error").toString().equals("true") ) {
-            int responseCode;
-            String message;
+        //stage 2: try to get crossref record, catch errors first, and halt processing
+        return externalDoiServiceConnector.retrieveMetadataAsync(doi, externalService)
+            .thenCompose(xrefJsonObject -> {
+                if (xrefJsonObject == null) {
+                    String message = "There was an error getting the metadata from " +
+                                     externalService.name() + " for " + doi;
+                    LOG.info(message);
+                    return CompletableFuture.completedFuture(errorResponse(500, message));
+                } else if (xrefJsonObject.getJsonString("error") != null) {
+                    int responseCode;
+                    String message;
+                    if (xrefJsonObject.getString("error").equals("Resource not found.")) {
+                        responseCode = 404;
+                        message = "The resource for DOI " + doi + " could not be found on " +
+                                  externalService.name() + ".";
+                    } else {
+                        responseCode = 500;
+                        message = "A record for this resource could not be returned from " +
+                                  externalService.name() + ": " + xrefJsonObject.getJsonString("error");
+                    }
+                    LOG.info(message);
+                    return CompletableFuture.completedFuture(errorResponse(responseCode, message));
+                }
+                // have a non-empty string to process
+                return resolveJournal(xrefJsonObject, journalIds)
+                    .thenApply(journalId -> journalResponse(doi, journalId, xrefJsonObject));
+            });
+    }
 
-            if (unpaywallJsonObject.getValue("/HTTP_status_code") != null &&
-                unpaywallJsonObject.getValue("/message") != null) {
+    private CompletableFuture<String> resolveJournal(JsonObject xrefJsonObject,
+                                                     Map<String, CompletableFuture<String>> journalIds) {
+        Journal journal;
+        try {
+            journal = elideConnector.buildPassJournal(xrefJsonObject);
+        } catch (RuntimeException e) {
+            LOG.error(e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        //the issns are sorted, so the key does not depend on the order they are listed in
+        String journalKey = journal.getJournalName() + " " +
+                            journal.getIssns().stream().sorted().collect(Collectors.toList());
+        return journalIds.computeIfAbsent(journalKey, key -> journalResolutions.execute(key,
+            () -> CompletableFuture.supplyAsync(() -> elideConnector.resolveJournal(journal), journalExecutor)));
+    }
 
-                responseCode = Integer.parseInt(unpaywallJsonObject.getValue("/HTTP_status_code").toString());
-                message = unpaywallJsonObject.getValue("/message").toString();
-            } else {
-                responseCode = 500;
-                message = "A record for this resource could not be returned from Unpaywall: " +
-                          unpaywallJsonObject.getJsonString("error");
-            }
+    private ResponseEntity<JsonObject> journalResponse(String doi, String journalId, JsonObject xrefJsonObject) {
+        if (journalId == null) {
+            // journal id is null - this should never happen unless Crosssref journal is insufficient
+            // for example, if a book doi ws supplied which has no issns
+            String message = "Insufficient information to locate or specify a journal entry.";
+            LOG.info(message);
+            return errorResponse(422, message);
+        }
+        JsonObject jsonObject = Json.createObjectBuilder()
+                                    .add("journal-id", journalId)
+                                    .add("crossref", xrefJsonObject)
+                                    .build();
+        LOG.info("Returning result for DOI " + doi);
+        return ResponseEntity.ok(jsonObject);
+    }
 
-            try (OutputStream out = response.getOutputStream()) {
-                JsonObject jsonObject = Json.createObjectBuilder()
-                                            .add("error", message)
-                                            .build();
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(responseCode);
-                LOG.info(message);
-            }
+    private DeferredResult<ResponseEntity<String>> newDeferredResult(ExternalDoiService externalService) {
+        return new DeferredResult<>(RESPONSE_TIMEOUT_MILLIS, jsonResponse(errorResponse(500,
+            "The request to " + externalService.name() + " timed out.")));
+    }
+
+    private void setResult(DeferredResult<ResponseEntity<String>> result, ExternalDoiService externalService,
+                           String doi, ResponseEntity<JsonObject> response, Throwable error) {
+        if (error != null) {
+            LOG.error("Processing the " + externalService.name() + " request for " + doi + " failed", error);
+            result.setResult(jsonResponse(errorResponse(500, "There was an error processing the request for " + doi)));
         } else {
-            // have a non-empty JSON string to process
-            try (OutputStream out = response.getOutputStream()) {
-                JsonObject jsonObject = externalService.processObject(unpaywallJsonObject);
-                out.write(jsonObject.toString().getBytes());
-                response.setStatus(200);
-                LOG.info("Returning " + externalService.name() + " result for DOI " + doi);
-            }
+            result.setResult(jsonResponse(response));
+        }
+    }
+
+    //the distinct DOIs of the batch, in the order of the request
+    private static List<String> parseDois(String body) {
+        JsonArray array;
+        try (JsonReader reader = Json.createReader(new StringReader(body))) {
+            array = reader.readArray();
+        }
+        LinkedHashSet<String> dois = new LinkedHashSet<>();
+        for (JsonValue value : array) {
+            dois.add(((JsonString) value).getString());
+        }
+        return new ArrayList<>(dois);
+    }
+
+    private static JsonObject batchLine(String doi, ResponseEntity<JsonObject> response) {
+        JsonObjectBuilder line = Json.createObjectBuilder()
+                                     .add("doi", doi)
+                                     .add("status", response.getStatusCodeValue());
+        response.getBody().forEach(line::add);
+        return line.build();
+    }
+
+    private static void send(ResponseBodyEmitter emitter, JsonObject line) {
+        try {
+            emitter.send(line.toString() + "\n", NDJSON_UTF8);
+        } catch (IOException | IllegalStateException e) {
+            //the client went away, or the response timed out
+            LOG.debug("Unable to send batch result: " + e);
         }
     }
-}
\ No newline at end of file
+
+    private static ResponseEntity<ResponseBodyEmitter> batchErrorResponse(int status, String message) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        send(emitter, Json.createObjectBuilder()
+                          .add("status", status)
+                          .add("error", message)
+                          .build());
+        emitter.complete();
+        return ResponseEntity.status(status).contentType(NDJSON_UTF8).body(emitter);
+    }
+
+    private static ResponseEntity<JsonObject> errorResponse(int status, String message) {
+        return ResponseEntity.status(status).body(Json.createObjectBuilder()
+                                                      .add("error", message)
+                                                      .build());
+    }
+
+    private static ResponseEntity<String> jsonResponse(ResponseEntity<JsonObject> response) {
+        return ResponseEntity.status(response.getStatusCode()).contentType(JSON_UTF8)
+                             .body(response.getBody().toString());
+    }
+}
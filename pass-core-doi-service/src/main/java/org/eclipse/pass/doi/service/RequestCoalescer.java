@@ -0,0 +1,100 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent requests for the same key into one. The first caller for a key starts the request, callers
+ * arriving while it is in flight share its result instead of starting a request of their own. Once the request
+ * completes the key is released, so a later caller starts a new request.
+ *
+ * This replaces rejecting duplicate DOI lookups: a burst of lookups of the same DOI results in one call to the
+ * external service, and every caller gets its result.
+ *
+ * A request which does not complete within the timeout of the coalescer expires: the callers sharing it fail with a
+ * TimeoutException and the key is released. The expiry is scheduled on the single delay scheduler shared by all
+ * CompletableFutures, so tracking a request costs one map entry and no thread of its own.
+ *
+ * @param <V> the type of the result of a request
+ */
+class RequestCoalescer<V> {
+    private final ConcurrentMap<String, CompletableFuture<V>> inFlightRequests = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    /**
+     * Initializes a coalescer whose requests do not expire.
+     */
+    RequestCoalescer() {
+        this.timeoutMillis = 0;
+    }
+
+    /**
+     * Initializes a coalescer whose requests expire after the supplied timeout.
+     *
+     * @param timeout how long a request may be in flight
+     */
+    RequestCoalescer(Duration timeout) {
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    /**
+     * Gets the result of the in-flight request for a key, or starts the request if there is none
+     *
+     * @param key the key of the request
+     * @param request starts the request, it is only called if no request for the key is in flight
+     * @return the result of the request
+     */
+    CompletableFuture<V> execute(String key, Supplier<CompletableFuture<V>> request) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = inFlightRequests.putIfAbsent(key, result);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                  .whenComplete((value, error) -> inFlightRequests.remove(key, result));
+        }
+        try {
+            request.get().whenComplete((value, error) -> {
+                inFlightRequests.remove(key, result);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightRequests.remove(key, result);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of requests in flight
+     * @return the number of requests in flight
+     */
+    int getInFlightCount() {
+        return inFlightRequests.size();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits the requests to an external service, so the DOI service stays polite to it: at most a bounded number of
+ * requests are in flight at a time, and they are started no faster than the configured rate. Requests over the limits
+ * wait in a queue, without holding a thread. The limiter is shared by all lookups of the service, single and batched.
+ *
+ * @see ExternalDoiServiceConnector
+ */
+class RequestLimiter {
+    private final int concurrency;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Queue<Runnable> pendingRequests = new ArrayDeque<>();
+    private int inFlightCount;
+    private long nextStartNanos = System.nanoTime();
+    private boolean dispatchScheduled;
+
+    /**
+     * Initializes the limiter with the supplied arguments.
+     *
+     * @param concurrency the maximum number of requests in flight at a time
+     * @param rate the maximum number of requests started per second
+     * @param scheduler schedules the start of requests which have to wait for the rate
+     */
+    RequestLimiter(int concurrency, double rate, ScheduledExecutorService scheduler) {
+        this.concurrency = concurrency;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts a request as soon as the limits allow
+     *
+     * @param request starts the request, the returned future completes when the request is no longer in flight
+     * @param <V> the type of the result of the request
+     * @return the result of the request
+     */
+    <V> CompletableFuture<V> submit(Supplier<CompletableFuture<V>> request) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        synchronized (this) {
+            pendingRequests.add(() -> {
+                CompletableFuture<V> started;
+                try {
+                    started = request.get();
+                } catch (RuntimeException e) {
+                    started = CompletableFuture.failedFuture(e);
+                }
+                started.whenComplete((value, error) -> {
+                    release();
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            });
+        }
+        dispatch();
+        return result;
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlightCount--;
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        Runnable next;
+        while ((next = nextRequest()) != null) {
+            next.run();
+        }
+    }
+
+    //takes the next request which may start now, or schedules a dispatch when the rate allows the next one
+    private synchronized Runnable nextRequest() {
+        if (pendingRequests.isEmpty() || inFlightCount >= concurrency || dispatchScheduled) {
+            return null;
+        }
+        long waitNanos = nextStartNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            dispatchScheduled = true;
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    dispatchScheduled = false;
+                }
+                dispatch();
+            }, waitNanos, TimeUnit.NANOSECONDS);
+            return null;
+        }
+        inFlightCount++;
+        nextStartNanos = Math.max(nextStartNanos, System.nanoTime()) + intervalNanos;
+        return pendingRequests.poll();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class DoiBatchResolverTest {
+    private static final List<String> DOIS =
+        IntStream.range(0, 20).mapToObj(i -> "10.1000/" + i).collect(Collectors.toList());
+
+    /**
+     * No more lookups of a batch than the concurrency should be in flight at a time, and every lookup of the batch
+     * should complete
+     */
+    @Test
+    public void lookupsShouldBeBoundedByConcurrency() {
+        DoiBatchResolver underTest = new DoiBatchResolver(2, 1);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        Set<String> completed = ConcurrentHashMap.newKeySet();
+        underTest.resolve(DOIS, doi -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return CompletableFuture.runAsync(() -> {
+                active.decrementAndGet();
+                completed.add(doi);
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        }).join();
+        assertEquals(20, completed.size());
+        assertTrue(maxActive.get() <= 2);
+
+        //lookups completing synchronously should not exhaust the stack
+        List<String> manyDois = IntStream.range(0, 100000).mapToObj(i -> "10.1000/" + i).collect(Collectors.toList());
+        AtomicInteger count = new AtomicInteger();
+        underTest.resolve(manyDois, doi -> CompletableFuture.completedFuture(count.incrementAndGet())).join();
+        assertEquals(100000, count.get());
+    }
+
+    /**
+     * A batch over the maximum number of batches should be rejected, a batch should be accepted again once one has
+     * completed
+     */
+    @Test
+    public void batchesOverTheMaximumShouldBeRejected() {
+        DoiBatchResolver underTest = new DoiBatchResolver(2, 1);
+        CompletableFuture<Object> lookup = new CompletableFuture<>();
+        CompletableFuture<Void> running = underTest.resolve(DOIS.subList(0, 1), doi -> lookup);
+
+        assertThrows(RejectedExecutionException.class,
+            () -> underTest.resolve(DOIS, doi -> CompletableFuture.completedFuture(null)));
+
+        lookup.complete(null);
+        running.join();
+        underTest.resolve(DOIS, doi -> CompletableFuture.completedFuture(null)).join();
+    }
+
+    /**
+     * Cancelling a batch should stop starting its lookups
+     */
+    @Test
+    public void cancelledBatchShouldStopLookups() {
+        DoiBatchResolver underTest = new DoiBatchResolver(2, 1);
+        List<CompletableFuture<Object>> lookups = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> batch = underTest.resolve(DOIS, doi -> {
+            CompletableFuture<Object> lookup = new CompletableFuture<>();
+            lookups.add(lookup);
+            return lookup;
+        });
+        assertEquals(2, lookups.size());
+
+        batch.cancel(false);
+        lookups.forEach(lookup -> lookup.complete(null));
+        assertEquals(2, lookups.size());
+        underTest.resolve(DOIS, doi -> CompletableFuture.completedFuture(null)).join();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import javax.json.JsonObject;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DoiMetadataCacheTest {
+    private static final String DOI = "10.4137/cmc.s38446";
+
+    private MockWebServer server;
+    private ExternalDoiService service;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        service = new TestDoiService(server.url("/works/").toString());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Repeated lookups of a found doi should be served from the cache
+     */
+    @Test
+    public void foundRecordShouldBeCached() {
+        ExternalDoiServiceConnector underTest = new ExternalDoiServiceConnector(
+            new DoiMetadataCache(10, Duration.ofMinutes(1), Duration.ofMinutes(1)));
+        server.enqueue(new MockResponse().setBody("{\"doi\":\"" + DOI + "\"}"));
+
+        JsonObject first = underTest.retrieveMetadata(DOI, service);
+        JsonObject second = underTest.retrieveMetadata(DOI.toUpperCase(), service);
+
+        assertEquals(DOI, first.getString("doi"));
+        assertEquals(first, second);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    /**
+     * A doi the external service could not find should be cached, errors of the external service should not
+     */
+    @Test
+    public void onlyNotFoundErrorsShouldBeCached() {
+        ExternalDoiServiceConnector underTest = new ExternalDoiServiceConnector(
+            new DoiMetadataCache(10, Duration.ofMinutes(1), Duration.ofMinutes(1)));
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("Resource not found."));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("Service unavailable."));
+        server.enqueue(new MockResponse().setResponseCode(503).setBody("Service unavailable."));
+
+        assertEquals("Resource not found.", underTest.retrieveMetadata(DOI, service).getString("error"));
+        assertEquals("Resource not found.", underTest.retrieveMetadata(DOI, service).getString("error"));
+        assertEquals(1, server.getRequestCount());
+
+        String otherDoi = "10.1212/abc.DEF";
+        assertEquals("Service unavailable.", underTest.retrieveMetadata(otherDoi, service).getString("error"));
+        assertEquals("Service unavailable.", underTest.retrieveMetadata(otherDoi, service).getString("error"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    /**
+     * Expired records and records evicted from a full cache should not be returned
+     */
+    @Test
+    public void expiredAndEvictedRecordsShouldNotBeReturned() throws InterruptedException {
+        JsonObject metadata = JsonTestObjects.xrefTestJsonObject();
+
+        DoiMetadataCache expiring = new DoiMetadataCache(10, Duration.ofMillis(50), Duration.ZERO);
+        expiring.put(DOI, service, metadata);
+        expiring.putNotFound("10.1212/abc.DEF", service, metadata);
+        assertEquals(metadata, expiring.get(DOI, service));
+        assertNull(expiring.get("10.1212/abc.DEF", service));
+        Thread.sleep(100);
+        assertNull(expiring.get(DOI, service));
+
+        DoiMetadataCache bounded = new DoiMetadataCache(2, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        bounded.put("10.1000/1", service, metadata);
+        bounded.put("10.1000/2", service, metadata);
+        bounded.get("10.1000/1", service);
+        bounded.put("10.1000/3", service, metadata);
+        assertEquals(metadata, bounded.get("10.1000/1", service));
+        assertNull(bounded.get("10.1000/2", service));
+        assertEquals(metadata, bounded.get("10.1000/3", service));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.json.JsonObject;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ExternalDoiServiceConnectorAsyncTest {
+    private static final String DOI = "10.4137/cmc.s38446";
+
+    private MockWebServer server;
+    private ExternalDoiService service;
+    private ExternalDoiServiceConnector underTest;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        service = new TestDoiService(server.url("/works/").toString());
+        underTest = new ExternalDoiServiceConnector(new DoiMetadataCache(10, Duration.ZERO, Duration.ZERO));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * The lookup should not block the calling thread, and complete on a thread of the HTTP client
+     */
+    @Test
+    public void lookupShouldNotBlockCaller() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"doi\":\"" + DOI + "\"}")
+                                         .setBodyDelay(500, TimeUnit.MILLISECONDS));
+        AtomicReference<Thread> completingThread = new AtomicReference<>();
+
+        CompletableFuture<JsonObject> lookup = underTest.retrieveMetadataAsync(DOI, service)
+            .whenComplete((metadata, error) -> completingThread.set(Thread.currentThread()));
+        assertFalse(lookup.isDone());
+
+        assertEquals(DOI, lookup.get(10, TimeUnit.SECONDS).getString("doi"));
+        assertNotEquals(Thread.currentThread(), completingThread.get());
+    }
+
+    /**
+     * A failed call should complete the lookup with null, as the blocking lookup returns
+     */
+    @Test
+    public void failedCallShouldCompleteWithNull() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        assertNull(underTest.retrieveMetadataAsync(DOI, service).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A lookup waiting for the limiter should not time out, the timeout only applies once its call is started
+     */
+    @Test
+    public void queuedLookupShouldNotTimeOut() throws Exception {
+        ExternalDoiServiceConnector limited = new ExternalDoiServiceConnector(
+            new DoiMetadataCache(10, Duration.ZERO, Duration.ZERO), 1, 1000, Duration.ofMillis(1000));
+        try {
+            server.enqueue(new MockResponse().setBody("{\"doi\":\"first\"}")
+                                             .setBodyDelay(700, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("{\"doi\":\"second\"}")
+                                             .setBodyDelay(700, TimeUnit.MILLISECONDS));
+
+            CompletableFuture<JsonObject> first = limited.retrieveMetadataAsync("10.1/first", service);
+            CompletableFuture<JsonObject> second = limited.retrieveMetadataAsync("10.1/second", service);
+            assertEquals("first", first.get(10, TimeUnit.SECONDS).getString("doi"));
+            assertEquals("second", second.get(10, TimeUnit.SECONDS).getString("doi"));
+        } finally {
+            limited.shutdown();
+        }
+    }
+
+    /**
+     * A call which takes longer than the timeout should complete the lookup with null
+     */
+    @Test
+    public void slowCallShouldTimeOut() throws Exception {
+        ExternalDoiServiceConnector limited = new ExternalDoiServiceConnector(
+            new DoiMetadataCache(10, Duration.ZERO, Duration.ZERO), 1, 1000, Duration.ofMillis(500));
+        try {
+            server.enqueue(new MockResponse().setBody("{\"doi\":\"" + DOI + "\"}")
+                                             .setBodyDelay(5, TimeUnit.SECONDS));
+
+            assertNull(limited.retrieveMetadataAsync(DOI, service).get(3, TimeUnit.SECONDS));
+        } finally {
+            limited.shutdown();
+        }
+    }
+}
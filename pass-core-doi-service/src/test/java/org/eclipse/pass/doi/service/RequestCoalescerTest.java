@@ -0,0 +1,117 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.json.JsonObject;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.Test;
+
+public class RequestCoalescerTest {
+    private static final String DOI = "10.4137/cmc.s38446";
+
+    /**
+     * Concurrent lookups of a doi should share one call to the external service, and all get its result
+     */
+    @Test
+    public void concurrentLookupsShouldShareOneCall() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            ExternalDoiService service = new TestDoiService(server.url("/works/").toString());
+            //caching is disabled, so only the coalescing prevents repeated calls
+            ExternalDoiServiceConnector underTest = new ExternalDoiServiceConnector(
+                new DoiMetadataCache(10, Duration.ZERO, Duration.ZERO));
+            server.enqueue(new MockResponse().setBody("{\"doi\":\"" + DOI + "\"}")
+                                             .setBodyDelay(500, TimeUnit.MILLISECONDS));
+            server.enqueue(new MockResponse().setBody("{\"doi\":\"" + DOI + "\"}"));
+
+            List<Future<JsonObject>> lookups = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                lookups.add(executor.submit(() -> underTest.retrieveMetadata(DOI, service)));
+            }
+            for (Future<JsonObject> lookup : lookups) {
+                assertEquals(DOI, lookup.get(10, TimeUnit.SECONDS).getString("doi"));
+            }
+            assertEquals(1, server.getRequestCount());
+
+            //once the lookup completed, the next lookup calls the external service again
+            assertEquals(DOI, underTest.retrieveMetadata(DOI, service).getString("doi"));
+            assertEquals(2, server.getRequestCount());
+        } finally {
+            executor.shutdownNow();
+            server.shutdown();
+        }
+    }
+
+    /**
+     * A failed request should fail every caller sharing it, and release the key
+     */
+    @Test
+    public void failedRequestShouldReleaseKey() {
+        RequestCoalescer<String> underTest = new RequestCoalescer<>();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        CompletableFuture<String> first = underTest.execute("key", () -> pending);
+        CompletableFuture<String> second = underTest.execute("key", () -> CompletableFuture.completedFuture("no"));
+        assertEquals(1, underTest.getInFlightCount());
+
+        pending.completeExceptionally(new IOException("failed"));
+        assertTrue(assertThrows(CompletionException.class, first::join).getCause() instanceof IOException);
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(0, underTest.getInFlightCount());
+
+        assertEquals("yes", underTest.execute("key", () -> CompletableFuture.completedFuture("yes")).join());
+    }
+
+    /**
+     * A request which does not complete in time should expire, and release its key without a thread of its own
+     */
+    @Test
+    public void expiredRequestShouldReleaseKey() {
+        RequestCoalescer<String> underTest = new RequestCoalescer<>(Duration.ofMillis(100));
+        CompletableFuture<String> hanging = new CompletableFuture<>();
+
+        CompletableFuture<String> first = underTest.execute("key", () -> hanging);
+        CompletableFuture<String> second = underTest.execute("key", () -> CompletableFuture.completedFuture("no"));
+        assertTrue(assertThrows(CompletionException.class, second::join).getCause() instanceof TimeoutException);
+        assertThrows(CompletionException.class, first::join);
+        assertEquals(0, underTest.getInFlightCount());
+
+        //the expired request completing late does not affect the next request
+        assertEquals("yes", underTest.execute("key", () -> CompletableFuture.completedFuture("yes")).join());
+        hanging.complete("late");
+        assertEquals(0, underTest.getInFlightCount());
+    }
+}
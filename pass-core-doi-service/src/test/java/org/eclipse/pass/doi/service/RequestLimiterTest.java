@@ -0,0 +1,84 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RequestLimiterTest {
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * No more requests than the concurrency should be in flight at a time, and every request should complete
+     */
+    @Test
+    public void requestsShouldBeBoundedByConcurrency() {
+        RequestLimiter underTest = new RequestLimiter(2, 1000, scheduler);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CompletableFuture<?>[] requests = IntStream.range(0, 20).mapToObj(i -> underTest.submit(() -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                active.decrementAndGet();
+                return i;
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        })).collect(Collectors.toList()).toArray(new CompletableFuture[0]);
+
+        CompletableFuture.allOf(requests).join();
+        assertEquals(19, requests[19].join());
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    /**
+     * Requests should be started no faster than the rate
+     */
+    @Test
+    public void requestsShouldBeLimitedByRate() {
+        RequestLimiter underTest = new RequestLimiter(10, 20, scheduler);
+        long startNanos = System.nanoTime();
+        CompletableFuture<?>[] requests = IntStream.range(0, 5)
+            .mapToObj(i -> underTest.submit(() -> CompletableFuture.completedFuture(i)))
+            .collect(Collectors.toList()).toArray(new CompletableFuture[0]);
+        CompletableFuture.allOf(requests).join();
+
+        //five requests at 20 per second start over at least four intervals of 50 ms
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue(elapsedMillis >= 200, "Took " + elapsedMillis + " ms");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.doi.service;
+
+import java.util.HashMap;
+import javax.json.JsonObject;
+
+/**
+ * An external DOI service which returns the raw JSON object of a mock server
+ */
+class TestDoiService extends ExternalDoiService {
+    private final String baseUrl;
+
+    TestDoiService(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    @Override
+    public String name() {
+        return "Test";
+    }
+
+    @Override
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public HashMap<String, String> parameterMap() {
+        return null;
+    }
+
+    @Override
+    public HashMap<String, String> headerMap() {
+        return null;
+    }
+
+    @Override
+    public JsonObject processObject(JsonObject object) {
+        return object;
+    }
+}
@@ -17,25 +17,52 @@
 package org.eclipse.pass.file.service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.pass.file.service.storage.BatchUploadResult;
+import org.eclipse.pass.file.service.storage.BatchUploadService;
+import org.eclipse.pass.file.service.storage.ChunkedUploadService;
+import org.eclipse.pass.file.service.storage.FileStorageInitializer;
 import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.FixityCheckService;
 import org.eclipse.pass.file.service.storage.StorageFile;
+import org.eclipse.pass.file.service.storage.UploadSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
@@ -53,6 +80,24 @@ public class PassFileServiceController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Lazy
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Lazy
+    @Autowired
+    private BatchUploadService batchUploadService;
+
+    @Lazy
+    @Autowired
+    private SubmissionArchiveService submissionArchiveService;
+
+    @Autowired
+    private FixityCheckService fixityCheckService;
+
+    @Autowired
+    private FileStorageInitializer fileStorageInitializer;
+
     /**
      *   Class constructor.
      */
@@ -69,12 +114,8 @@ public class PassFileServiceController {
     @PostMapping("/file")
     public ResponseEntity<?> fileUpload(@RequestParam("file") MultipartFile file) {
         StorageFile returnStorageFile;
-        try {
-            if (file.getBytes().length == 0 || file.isEmpty()) {
-                return ResponseEntity.badRequest().build();
-            }
-        } catch (IOException e) {
-            LOG.error("File Service: Error processing file upload: " + e);
+        //isEmpty checks the size of the part without reading its content into memory
+        if (file.isEmpty()) {
             return ResponseEntity.badRequest().build();
         }
 
@@ -89,41 +130,457 @@ public class PassFileServiceController {
     }
 
     /**
-     * Gets a file by the fileId and returns a single file. Implicitly supports HTTP HEAD.
+     * Handles an upload of many files in one request. The files are committed to the repository concurrently and the
+     * response contains a BatchUploadResult with the status of each file, in the order of the uploaded files.
+     * The response status is 201 if all files were stored, otherwise 207 Multi-Status.
+     *
+     * @param files The multipart files that are uploaded from the client.
+     * @return the BatchUploadResult of each file
+     */
+    @PostMapping("/file/batch")
+    public ResponseEntity<?> batchFileUpload(@RequestParam("files") List<MultipartFile> files) {
+        if (files.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<BatchUploadResult> results = batchUploadService.storeFiles(files);
+        boolean allCreated = results.stream()
+                .allMatch(result -> result.getStatus() == HttpStatus.CREATED.value());
+        return ResponseEntity.status(allCreated ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    /**
+     * Creates a resumable upload session for a file that is uploaded in chunks. The response contains the uploadId
+     * that the chunks are sent to.
+     *
+     * @param fileName The original name of the file that will be uploaded.
+     * @param size The total size of the file in bytes.
+     * @return the UploadSession that was created, or 413 if the file is larger than the maximum upload size
+     */
+    @PostMapping("/file/upload")
+    public ResponseEntity<?> createUpload(@RequestParam("fileName") String fileName,
+                                          @RequestParam("size") long size) {
+        try {
+            UploadSession uploadSession = chunkedUploadService.createUploadSession(fileName, size);
+            return ResponseEntity.created(URI.create("/file/upload/" + uploadSession.getUploadId()))
+                    .body(uploadSession);
+        } catch (MaxUploadSizeExceededException e) {
+            LOG.error("File Service: Upload of " + size + " bytes refused: " + e);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            LOG.error("File Service: Invalid upload request: " + e);
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            LOG.error("File Service: Error creating upload: " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Gets the state of an upload session. The receivedBytes of the session is the offset a client should resume
+     * the upload from.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @return the UploadSession
+     */
+    @GetMapping("/file/upload/{uploadId}")
+    public ResponseEntity<?> getUpload(@PathVariable String uploadId) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.getUploadSession(uploadId));
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IOException e) {
+            LOG.error("File Service: Error reading upload " + uploadId + ": " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Uploads a chunk of a file at the supplied offset. The body of the request is the raw content of the chunk.
+     * Chunks may be sent in any order and in parallel, and a failed chunk can be sent again.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @param offset The offset of the first byte of the chunk in the file.
+     * @param chunk The content of the chunk.
+     * @return the UploadSession after the chunk was received
+     */
+    @PutMapping("/file/upload/{uploadId}")
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId, @RequestParam("offset") long offset,
+                                         InputStream chunk) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.writeChunk(uploadId, offset, chunk));
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            LOG.error("File Service: Invalid chunk for upload " + uploadId + ": " + e);
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            LOG.error("File Service: Error storing chunk for upload " + uploadId + ": " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Completes an upload session once every byte of the file has been received, persisting the file.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @return a File object that has been uploaded.
+     */
+    @PostMapping("/file/upload/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(@PathVariable String uploadId) {
+        try {
+            StorageFile returnStorageFile = chunkedUploadService.completeUploadSession(uploadId);
+            return ResponseEntity.created(URI.create(returnStorageFile.getUuid())).body(returnStorageFile);
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            LOG.error("File Service: Incomplete upload " + uploadId + ": " + e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            LOG.error("File Service: Error completing upload " + uploadId + ": " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Aborts an upload session, discarding the chunks received so far.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @return the result of the abort
+     */
+    @DeleteMapping("/file/upload/{uploadId}")
+    public ResponseEntity<?> abortUpload(@PathVariable String uploadId) {
+        try {
+            chunkedUploadService.abortUploadSession(uploadId);
+            return ResponseEntity.ok().body("Aborted");
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IOException e) {
+            LOG.error("File Service: Error aborting upload " + uploadId + ": " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Reports whether the File Service is ready to serve requests. With eager initialization it is ready once the
+     * storage is initialized in the background at startup, it is not ready while the initialization runs or after it
+     * failed. When eager initialization is disabled the storage is initialized on the first request and the File
+     * Service is always reported as ready. Only the File Service is reported, the readiness of the application is not
+     * affected.
+     *
+     * @return 200 with the state of the initialization when ready, otherwise 503 Service Unavailable with the state
+     */
+    @GetMapping("/file/ready")
+    public ResponseEntity<?> getReadiness() {
+        FileStorageInitializer.State state = fileStorageInitializer.getState();
+        if (state != FileStorageInitializer.State.READY && state != FileStorageInitializer.State.DISABLED) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(state.name());
+        }
+        return ResponseEntity.ok(state.name());
+    }
+
+    /**
+     * Starts a fixity check of the repository in the background. The progress of the check is available from
+     * GET /file/fixity.
+     *
+     * @return the FixityCheckStatus of the started check, or 409 Conflict if a check is already running
+     */
+    @PostMapping("/file/fixity")
+    public ResponseEntity<?> startFixityCheck() {
+        if (!fixityCheckService.startFixityCheck()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(fixityCheckService.getStatus());
+        }
+        return ResponseEntity.accepted().body(fixityCheckService.getStatus());
+    }
+
+    /**
+     * Gets the progress of the current fixity check of the repository, or the result of the most recent check,
+     * including the objects that failed the check.
+     *
+     * @return the FixityCheckStatus
+     */
+    @GetMapping("/file/fixity")
+    public ResponseEntity<?> getFixityCheckStatus() {
+        return ResponseEntity.ok(fixityCheckService.getStatus());
+    }
+
+    /**
+     * Gets the number of deleted files whose content is waiting to be purged from the repository, and the number of
+     * deleted files whose purge failed on every attempt and is no longer retried.
+     *
+     * @return the pending and failed purge counts
+     */
+    @GetMapping("/file/purge")
+    public ResponseEntity<?> getPurgeStatus() {
+        Map<String, Integer> purgeStatus = new LinkedHashMap<>();
+        purgeStatus.put("pending", fileStorageService.getPendingPurgeCount());
+        purgeStatus.put("failed", fileStorageService.getFailedPurgeCount());
+        return ResponseEntity.ok(purgeStatus);
+    }
+
+    /**
+     * Gets a file by the fileId and returns a single file. HTTP HEAD requests are answered with the headers of the
+     * file without reading its content. The content is streamed
+     * from the repository to the response, so the file is never fully loaded into memory. When the content is on
+     * local disk (FILE_SYSTEM storage, or S3 storage with the local cache enabled) the file is transferred directly to
+     * the response with FileChannel.transferTo.
+     *
+     * The response carries an ETag (the SHA-512 digest of the file) and a Last-Modified header (the time the OCFL
+     * version was created). Conditional requests using If-None-Match or If-Modified-Since are answered with 304 Not
+     * Modified, and byte range requests using the Range header are answered with 206 Partial Content.
+     *
+     * When pre-signed downloads are enabled for S3 storage, GET requests for large files are answered with a 302
+     * redirect to a short-lived pre-signed URL of the content in the S3 bucket instead, and S3 answers range requests.
+     *
+     * Files that were compressed when they were stored are sent compressed with a Content-Encoding header to clients
+     * that accept the encoding, and decompressed for other clients and for range requests.
      *
      * @param uuid of the file to return (required), is one part of the fileId
      * @param origFileName of the file to return (required), is one part of the fileId
+     * @param request the servlet request that conditional and range headers are read from
+     * @param response the servlet response that local content is transferred to
      * @return Bitstream The file requested by the fileId
      */
     @GetMapping("/file/{uuid:.+}/{origFileName:.+}")
     @ResponseBody
-    public ResponseEntity<?> getFileById(@PathVariable String uuid, @PathVariable String origFileName) {
+    public ResponseEntity<?> getFileById(@PathVariable String uuid, @PathVariable String origFileName,
+                                         HttpServletRequest request, HttpServletResponse response) {
         String fileId = uuid + "/" + origFileName;
         if (uuid == null || origFileName == null) {
             LOG.error("File ID not provided to get a file.");
             return ResponseEntity.badRequest().body("File ID not provided to get a file.");
         }
-        ByteArrayResource fileResource;
+        Optional<String> contentEncoding;
         String contentType = "";
-        contentType = fileStorageService.getFileContentType(fileId);
+        long contentLength;
+        String eTag;
+        long lastModified;
 
         try {
-            fileResource = fileStorageService.getFile(fileId);
+            contentType = fileStorageService.getFileContentType(fileId);
+            contentEncoding = fileStorageService.getFileContentEncoding(fileId);
+            contentLength = fileStorageService.getFileSize(fileId);
+            eTag = "\"" + fileStorageService.getFileDigest(fileId) + "\"";
+            lastModified = fileStorageService.getFileLastModified(fileId).toEpochMilli();
         } catch (Exception e) {
             LOG.error("File Service: File not found: " + e);
             return ResponseEntity.notFound().build();
         }
 
+        boolean isRangeRequest = request.getHeader(HttpHeaders.RANGE) != null;
+        //compressed content is sent as it is stored to clients that accept its encoding, except for byte ranges
+        boolean isEncodedResponse = contentEncoding.isPresent() && !isRangeRequest
+                && acceptsEncoding(request, contentEncoding.get());
+        if (contentEncoding.isPresent()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (isEncodedResponse) {
+            //the encoded and decoded content are different representations of the file
+            eTag = eTag.substring(0, eTag.length() - 1) + "-" + contentEncoding.get() + "\"";
+        }
+
+        //sets the ETag and Last-Modified headers, and the 304 status if the client already has this version
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+
         String headerAttachment = "attachment; filename=\"" + origFileName + "\"";
+        //the URL is signed for GET, so HEAD requests are answered by the File Service, and S3 does not decode
+        //compressed content
+        if (!HttpMethod.HEAD.matches(request.getMethod()) && (contentEncoding.isEmpty() || isEncodedResponse)) {
+            Optional<URL> presignedUrl;
+            try {
+                presignedUrl = fileStorageService.getPresignedDownloadUrl(fileId, headerAttachment);
+            } catch (Exception e) {
+                LOG.error("File Service: Unable to pre-sign the download of file " + fileId + ": " + e);
+                return ResponseEntity.internalServerError().build();
+            }
+            if (presignedUrl.isPresent()) {
+                try {
+                    return ResponseEntity.status(HttpStatus.FOUND)
+                            .location(presignedUrl.get().toURI())
+                            .cacheControl(CacheControl.noStore())
+                            .build();
+                } catch (URISyntaxException e) {
+                    LOG.error("File Service: Invalid pre-signed URL of file " + fileId + ": " + e);
+                    return ResponseEntity.internalServerError().build();
+                }
+            }
+        }
+        //HEAD requests are answered with the headers of the file, without reading its content
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            ResponseEntity.BodyBuilder headResponse = ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, headerAttachment)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(MediaType.parseMediaType(contentType));
+            if (isEncodedResponse) {
+                try {
+                    contentLength = fileStorageService.getEncodedFileSize(fileId);
+                } catch (IOException e) {
+                    LOG.error("File Service: File not found: " + e);
+                    return ResponseEntity.notFound().build();
+                }
+                headResponse.header(HttpHeaders.CONTENT_ENCODING, contentEncoding.get());
+            }
+            return headResponse.contentLength(contentLength).build();
+        }
+
+        if (isEncodedResponse) {
+            Resource encodedResource;
+            try {
+                encodedResource = fileStorageService.getEncodedFileResource(fileId);
+            } catch (IOException e) {
+                LOG.error("File Service: File not found: " + e);
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, headerAttachment)
+                    .header(HttpHeaders.CONTENT_ENCODING, contentEncoding.get())
+                    .contentType(MediaType.parseMediaType(contentType))
+                    .body(encodedResource);
+        }
+
+        //the local path is only resolved to serve the content, with the S3 cache this fetches the file on a miss
+        Optional<FileChannel> fileChannel = Optional.empty();
+        if (!isRangeRequest) {
+            try {
+                fileChannel = openFileChannel(fileId);
+            } catch (IOException e) {
+                LOG.error("File Service: File not found: " + e);
+                return ResponseEntity.notFound().build();
+            }
+        }
+        if (fileChannel.isPresent()) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, headerAttachment);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setContentType(MediaType.parseMediaType(contentType).toString());
+            response.setContentLengthLong(contentLength);
+            try (FileChannel channel = fileChannel.get()) {
+                transferFully(channel, Channels.newChannel(response.getOutputStream()));
+            } catch (IOException e) {
+                LOG.error("File Service: Error transferring file " + fileId + ": " + e);
+                if (!response.isCommitted()) {
+                    response.reset();
+                    return ResponseEntity.internalServerError().build();
+                }
+            }
+            return null;
+        }
+
+        //A Resource body (other than InputStreamResource) lets Spring MVC answer Range requests with 206 or 416
+        Resource fileResource;
+        try {
+            fileResource = fileStorageService.getFileResource(fileId);
+        } catch (IOException e) {
+            LOG.error("File Service: File not found: " + e);
+            return ResponseEntity.notFound().build();
+        }
+
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, headerAttachment)
-                .contentLength(fileResource.contentLength())
                 .contentType(MediaType.parseMediaType(contentType))
                 .body(fileResource);
     }
 
     /**
-     * Deletes a file by the provided file ID
+     * Gets a zip archive of all files of a Submission. The archive is streamed to the response as the files are read
+     * from the repository, so it is never written to a temporary file or held in memory. All files are checked
+     * before the archive is streamed, so a missing file is reported with 404 instead of a truncated archive.
+     *
+     * @param submissionId the id of the Submission (required)
+     * @param response the servlet response that the archive is streamed to
+     * @return Bitstream The zip archive of the files of the Submission
+     */
+    @GetMapping("/file/submission/{submissionId}/archive")
+    public ResponseEntity<?> getSubmissionArchive(@PathVariable Long submissionId, HttpServletResponse response) {
+        Map<String, String> entries;
+        try {
+            entries = submissionArchiveService.getSubmissionFiles(submissionId);
+        } catch (IOException e) {
+            LOG.error("File Service: Error reading the files of submission " + submissionId + ": " + e);
+            return ResponseEntity.internalServerError().build();
+        }
+        if (entries.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        for (String fileId : entries.values()) {
+            try {
+                fileStorageService.getFileSize(fileId);
+            } catch (Exception e) {
+                LOG.error("File Service: File of submission " + submissionId + " not found: " + e);
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("File not found: " + fileId);
+            }
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"submission-" + submissionId + ".zip\"");
+        response.setContentType("application/zip");
+        try {
+            fileStorageService.writeZipArchive(entries, response.getOutputStream());
+        } catch (IOException e) {
+            LOG.error("File Service: Error streaming the archive of submission " + submissionId + ": " + e);
+            if (!response.isCommitted()) {
+                response.reset();
+                return ResponseEntity.internalServerError().build();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens the content of the file on local disk, if it is available there. A file of the local cache of S3 files
+     * may be evicted before it is opened, then the content is served like content that is not on local disk.
+     */
+    private Optional<FileChannel> openFileChannel(String fileId) throws IOException {
+        Optional<Path> filePath = fileStorageService.getFileSystemPath(fileId);
+        if (filePath.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(FileChannel.open(filePath.get(), StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            LOG.debug("File Service: Local file of " + fileId + " is gone, it is streamed instead");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Transfers the whole content of the file channel to the target channel. FileChannel.transferTo may transfer
+     * fewer bytes than requested, so it is called until the end of the file is reached.
+     */
+    private void transferFully(FileChannel fileChannel, WritableByteChannel target) throws IOException {
+        long position = 0;
+        long size = fileChannel.size();
+        while (position < size) {
+            position += fileChannel.transferTo(position, size - position, target);
+        }
+    }
+
+    /**
+     * Determines whether the client accepts a content encoding, from the Accept-Encoding header of the request. An
+     * encoding with a quality value of 0 is not accepted.
+     */
+    private boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] codingParts = coding.trim().split(";");
+            if (codingParts[0].trim().equalsIgnoreCase(encoding)) {
+                for (int i = 1; i < codingParts.length; i++) {
+                    if (codingParts[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes a file by the provided file ID. The file is no longer found once the response is returned, while its
+     * content is purged from the repository in the background.
      *
      * @param uuid ID of the file to delete (required), is one part of the fileId
      * @param origFileName ID of the file to delete (required), is one part of the fileId
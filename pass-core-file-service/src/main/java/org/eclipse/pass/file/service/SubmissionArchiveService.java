@@ -0,0 +1,164 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.yahoo.elide.RefreshableElide;
+import org.eclipse.pass.object.ElideDataStorePassClient;
+import org.eclipse.pass.object.PassClient;
+import org.eclipse.pass.object.PassClientSelector;
+import org.eclipse.pass.object.RSQL;
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.pass.object.model.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+/**
+ * The SubmissionArchiveService finds the files of a Submission, so that they can be exported as one archive. The File
+ * objects of the Submission are read through Elide, and the fileId of each file is taken from the uri of the File,
+ * which is the File Service location the file was uploaded to, e.g. /file/{uuid}/{origFileName}.
+ *
+ * @author Tim Sanders
+ * @see PassFileServiceController
+ */
+@Lazy
+@Service
+public class SubmissionArchiveService {
+    private static final Logger LOG = LoggerFactory.getLogger(SubmissionArchiveService.class);
+
+    private final RefreshableElide refreshableElide;
+
+    /**
+     * SubmissionArchiveService Class constructor.
+     *
+     * @param refreshableElide The Elide instance the File objects are read with.
+     */
+    @Autowired
+    public SubmissionArchiveService(RefreshableElide refreshableElide) {
+        this.refreshableElide = refreshableElide;
+    }
+
+    /**
+     * Gets the files of a Submission that are stored in the File Service. The name of a file in the archive is the
+     * name of its File object, without any directories, so a name like ../../x cannot escape the directory the archive
+     * is extracted to. If several files have the same name, the files after the first get a numbered suffix, e.g.
+     * name (2).ext.
+     *
+     * @param submissionId The id of the Submission.
+     * @return The files of the Submission, mapping the name of each file in the archive to its fileId
+     * @throws IOException If the File objects cannot be read an IOException will be thrown.
+     */
+    public Map<String, String> getSubmissionFiles(Long submissionId) throws IOException {
+        List<File> files;
+        try (PassClient passClient = new ElideDataStorePassClient(refreshableElide)) {
+            PassClientSelector<File> selector = new PassClientSelector<>(File.class);
+            selector.setFilter(RSQL.equals("submission.id", submissionId.toString()));
+            selector.setSorting("id");
+            files = passClient.streamObjects(selector).collect(Collectors.toList());
+        }
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (File file : files) {
+            String fileId = getFileId(file.getUri());
+            if (fileId == null) {
+                LOG.warn("File Service: File " + file.getId() + " of submission " + submissionId +
+                        " is not stored in the File Service: " + file.getUri());
+                continue;
+            }
+            String entryName = getEntryName(file.getName(), fileId.substring(fileId.indexOf('/') + 1),
+                    entries.keySet());
+            entries.put(entryName, fileId);
+        }
+        return entries;
+    }
+
+    /**
+     * Gets a safe and unique name of an entry of the archive. The name is the last segment of the supplied name, so
+     * path separators, . and .. are stripped. A name that is already used gets the lowest free numbered suffix
+     * before its extension, which is deterministic for the same files in the same order.
+     *
+     * @param name The name of the File object, may be null.
+     * @param defaultName The name used if the name of the File object is empty, the original name of the file.
+     * @param usedNames The names of the entries that were already added to the archive.
+     * @return The name of the entry
+     */
+    static String getEntryName(String name, String defaultName, Set<String> usedNames) {
+        String entryName = getLastSegment(name);
+        if (entryName == null) {
+            entryName = getLastSegment(defaultName);
+        }
+        if (entryName == null) {
+            entryName = "file";
+        }
+        if (!usedNames.contains(entryName)) {
+            return entryName;
+        }
+        String baseName = FilenameUtils.removeExtension(entryName);
+        String extension = FilenameUtils.getExtension(entryName);
+        String suffix = extension.isEmpty() ? "" : "." + extension;
+        for (int number = 2; ; number++) {
+            String numberedName = baseName + " (" + number + ")" + suffix;
+            if (!usedNames.contains(numberedName)) {
+                return numberedName;
+            }
+        }
+    }
+
+    private static String getLastSegment(String name) {
+        if (name == null) {
+            return null;
+        }
+        //both separators are stripped, archives are extracted on Windows as well
+        String[] segments = name.split("[/\\\\]");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            //a drive letter would make the name absolute on Windows
+            String segment = segments[i].trim().replaceFirst("^[A-Za-z]:", "");
+            if (!segment.isEmpty() && !segment.equals(".") && !segment.equals("..")) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the fileId from the uri of a File, which ends with /file/{uuid}/{origFileName}.
+     *
+     * @param uri The uri of the File.
+     * @return The fileId, or null if the uri is not a File Service location
+     */
+    static String getFileId(URI uri) {
+        if (uri == null || uri.getPath() == null) {
+            return null;
+        }
+        String[] segments = uri.getPath().split("/");
+        int length = segments.length;
+        if (length < 3 || !segments[length - 3].equals("file")) {
+            return null;
+        }
+        return segments[length - 2] + "/" + segments[length - 1];
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.Objects;
+
+/**
+ * A BatchUploadResult is the outcome of storing one file of a batch upload. Every file of a batch is stored
+ * independently, so each result carries its own status: the HTTP status of the file, the StorageFile if it was stored,
+ * and an error message if it was not.
+ *
+ * @author Tim Sanders
+ * @see BatchUploadService
+ */
+public class BatchUploadResult {
+    private String fileName;
+    private Integer status;
+    private StorageFile storageFile;
+    private String error;
+
+    /**
+     * Default Constructor which initializes the BatchUploadResult with default value for member variables
+     */
+    public BatchUploadResult() {
+        this.fileName = "0";
+        this.status = 0;
+    }
+
+    /**
+     * Initializes the BatchUploadResult with the supplied arguments.
+     *
+     * @param fileName The original name of the uploaded file.
+     * @param status The HTTP status of the file, e.g. 201 if it was stored.
+     * @param storageFile The StorageFile of the stored file, or null if it was not stored.
+     * @param error The reason the file was not stored, or null if it was stored.
+     */
+    public BatchUploadResult(String fileName, Integer status, StorageFile storageFile, String error) {
+        this.fileName = fileName;
+        this.status = status;
+        this.storageFile = storageFile;
+        this.error = error;
+    }
+
+    /**
+     * Get fileName
+     * @return fileName of the BatchUploadResult
+     **/
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Set fileName
+     * @param fileName of the BatchUploadResult
+     **/
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Get status, the HTTP status of the file
+     * @return status of the BatchUploadResult
+     **/
+    public Integer getStatus() {
+        return status;
+    }
+
+    /**
+     * Set status
+     * @param status of the BatchUploadResult
+     **/
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    /**
+     * Get storageFile
+     * @return storageFile of the BatchUploadResult, or null if the file was not stored
+     **/
+    public StorageFile getStorageFile() {
+        return storageFile;
+    }
+
+    /**
+     * Set storageFile
+     * @param storageFile of the BatchUploadResult
+     **/
+    public void setStorageFile(StorageFile storageFile) {
+        this.storageFile = storageFile;
+    }
+
+    /**
+     * Get error
+     * @return error of the BatchUploadResult, or null if the file was stored
+     **/
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Set error
+     * @param error of the BatchUploadResult
+     **/
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public boolean equals(java.lang.Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BatchUploadResult batchUploadResult = (BatchUploadResult) o;
+        return Objects.equals(this.fileName, batchUploadResult.fileName) &&
+                Objects.equals(this.status, batchUploadResult.status) &&
+                Objects.equals(this.storageFile, batchUploadResult.storageFile) &&
+                Objects.equals(this.error, batchUploadResult.error);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileName, status, storageFile, error);
+    }
+
+    @Override
+    public String toString() {
+        return "class BatchUploadResult {\n" +
+                "    fileName: " + fileName + "\n" +
+                "    status: " + status + "\n" +
+                "    storageFile: " + storageFile + "\n" +
+                "    error: " + error + "\n" +
+                "}";
+    }
+}
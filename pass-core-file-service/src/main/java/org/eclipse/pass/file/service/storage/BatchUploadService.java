@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * The BatchUploadService stores the files of a batch upload. Each file is committed to the OCFL repository as its own
+ * object, so the files are independent of each other and are committed concurrently on a bounded pool of threads.
+ * The number of concurrent commits is set by the batch upload concurrency in the StorageProperties. A file that
+ * cannot be stored does not affect the other files of the batch; its failure is reported in its BatchUploadResult.
+ *
+ * @author Tim Sanders
+ * @see BatchUploadResult
+ * @see FileStorageService
+ */
+@Lazy
+@Service
+public class BatchUploadService {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchUploadService.class);
+
+    private final FileStorageService fileStorageService;
+    private final ExecutorService uploadExecutor;
+
+    /**
+     * BatchUploadService Class constructor.
+     *
+     * @param fileStorageService The FileStorageService that the files are persisted with.
+     * @param storageConfiguration A set of configuration properties of the File Service.
+     */
+    @Autowired
+    public BatchUploadService(FileStorageService fileStorageService, StorageConfiguration storageConfiguration) {
+        this.fileStorageService = fileStorageService;
+        int concurrency = storageConfiguration.getStorageProperties().getBatchUploadConcurrency();
+        AtomicInteger threadCount = new AtomicInteger();
+        uploadExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "file-service-batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops the threads that commit the files of batch uploads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    /**
+     * Stores the files of a batch upload concurrently and waits until all of them are stored or have failed.
+     *
+     * @param files The uploaded files.
+     * @return The BatchUploadResult of each file, in the order of the supplied files
+     */
+    public List<BatchUploadResult> storeFiles(List<MultipartFile> files) {
+        List<CompletableFuture<BatchUploadResult>> results = new ArrayList<>();
+        for (MultipartFile file : files) {
+            results.add(CompletableFuture.supplyAsync(() -> storeFile(file), uploadExecutor));
+        }
+        return results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    private BatchUploadResult storeFile(MultipartFile file) {
+        String fileName = file.getOriginalFilename();
+        //isEmpty checks the size of the part without reading its content into memory
+        if (file.isEmpty()) {
+            return new BatchUploadResult(fileName, HttpStatus.BAD_REQUEST.value(), null,
+                    "File Service: The file is empty");
+        }
+        try {
+            StorageFile storageFile = fileStorageService.storeFile(file);
+            return new BatchUploadResult(fileName, HttpStatus.CREATED.value(), storageFile, null);
+        } catch (Exception e) {
+            LOG.error("File Service: Error storing file " + fileName + " of batch upload: " + e);
+            return new BatchUploadResult(fileName, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, e.getMessage());
+        }
+    }
+}
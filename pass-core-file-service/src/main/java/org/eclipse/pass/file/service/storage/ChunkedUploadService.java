@@ -0,0 +1,410 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+/**
+ * The ChunkedUploadService supports resumable uploads of large files. An upload session is created with the name and
+ * total size of the file, the file is then uploaded in chunks at byte offsets, in any order and possibly in parallel,
+ * and once every byte has been received the session is completed and the file is persisted into storage as a single
+ * OCFL object through the FileStorageService. A failed chunk only needs to be sent again, not the whole file.
+ *
+ * Chunks are staged in an uploads directory in the OCFL working directory, one file per chunk named by its offset,
+ * next to a properties file describing the session. All session state is on disk, so an upload can be resumed after
+ * a restart. Sessions that are inactive for longer than the configured upload session expiration are considered
+ * abandoned and are deleted by the background cleanup of the FileStorageService, which starts with the
+ * FileStorageService rather than with the first use of this service, so sessions left before a restart expire too.
+ *
+ * Each session has a read-write lock. Chunks are written holding the read lock, so chunks of a session can be written
+ * in parallel, while completing, aborting and expiring a session hold the write lock. A session is therefore never
+ * deleted while a chunk is written or the file is assembled, and it is completed at most once.
+ *
+ * @author Tim Sanders
+ * @see UploadSession
+ * @see FileStorageService
+ */
+@Lazy
+@Service
+public class ChunkedUploadService {
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkedUploadService.class);
+    private static final String UPLOAD_DIR = "uploads";
+    private static final String SESSION_FILE = "session.properties";
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final String FILE_NAME_PROPERTY = "fileName";
+    private static final String SIZE_PROPERTY = "size";
+
+    private final FileStorageService fileStorageService;
+    private final Path uploadLoc;
+    private final Duration sessionExpiration;
+    private final long maxSize;
+    private final ConcurrentMap<String, ReadWriteLock> sessionLocks = new ConcurrentHashMap<>();
+
+    /**
+     * ChunkedUploadService Class constructor.
+     *
+     * @param fileStorageService The FileStorageService that completed uploads are persisted with.
+     * @param storageConfiguration A set of configuration properties of the File Service.
+     * @throws IOException If the uploads directory cannot be created an IOException will be thrown.
+     */
+    @Autowired
+    public ChunkedUploadService(FileStorageService fileStorageService, StorageConfiguration storageConfiguration)
+            throws IOException {
+        this.fileStorageService = fileStorageService;
+        this.uploadLoc = fileStorageService.getWorkDir().resolve(UPLOAD_DIR);
+        this.sessionExpiration = storageConfiguration.getStorageProperties().getUploadSessionExpiration();
+        this.maxSize = storageConfiguration.getStorageProperties().getUploadMaxSize().toBytes();
+        try {
+            Files.createDirectories(uploadLoc);
+        } catch (IOException e) {
+            throw new IOException("File Service: Unable to setup the upload directory: " + e);
+        }
+    }
+
+    /**
+     * Creates a new upload session for a file.
+     *
+     * @param fileName The original name of the file that will be uploaded.
+     * @param size The total size of the file in bytes.
+     * @return The UploadSession that was created
+     * @throws IOException If the session cannot be staged an IOException will be thrown.
+     * @throws IllegalArgumentException If the file name is empty or the size is not positive.
+     * @throws MaxUploadSizeExceededException If the size is larger than the configured maximum upload size.
+     */
+    public UploadSession createUploadSession(String fileName, long size) throws IOException {
+        if (fileName == null || fileName.isEmpty() || size <= 0) {
+            throw new IllegalArgumentException("File Service: An upload requires a file name and a positive size");
+        }
+        if (size > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        String uploadId = UUID.randomUUID().toString();
+        Path sessionDir = Files.createDirectory(uploadLoc.resolve(uploadId));
+        Properties sessionProperties = new Properties();
+        sessionProperties.setProperty(FILE_NAME_PROPERTY, fileName);
+        sessionProperties.setProperty(SIZE_PROPERTY, Long.toString(size));
+        try (OutputStream out = Files.newOutputStream(sessionDir.resolve(SESSION_FILE))) {
+            sessionProperties.store(out, "Pass-Core File Service upload session");
+        }
+        LOG.info("File Service: Upload session " + uploadId + " created for " + fileName + " of size " + size);
+        return new UploadSession(uploadId, fileName, size, 0L);
+    }
+
+    /**
+     * Gets the state of an upload session, including the number of contiguous bytes received so far.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @return The UploadSession
+     * @throws NoSuchFileException If the upload session does not exist or has expired.
+     * @throws IOException If the session cannot be read an IOException will be thrown.
+     */
+    public UploadSession getUploadSession(String uploadId) throws IOException {
+        ReadWriteLock sessionLock = getSessionLock(uploadId);
+        sessionLock.readLock().lock();
+        try {
+            Path sessionDir = getSessionDir(uploadId);
+            Properties sessionProperties = loadSessionProperties(sessionDir);
+            return new UploadSession(uploadId, sessionProperties.getProperty(FILE_NAME_PROPERTY),
+                    Long.parseLong(sessionProperties.getProperty(SIZE_PROPERTY)), getReceivedBytes(sessionDir));
+        } finally {
+            sessionLock.readLock().unlock();
+            releaseSessionLock(uploadId, sessionLock);
+        }
+    }
+
+    /**
+     * Stages a chunk of the file at the supplied offset. A chunk that is sent again at the same offset replaces the
+     * previous one, so a failed chunk can simply be retried.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @param offset The offset of the first byte of the chunk in the file.
+     * @param chunk The content of the chunk. The stream is consumed but not closed.
+     * @return The UploadSession after the chunk was staged
+     * @throws NoSuchFileException If the upload session does not exist or has expired.
+     * @throws IOException If the chunk cannot be staged an IOException will be thrown.
+     * @throws IllegalArgumentException If the chunk is empty or does not fit in the declared size of the file.
+     */
+    public UploadSession writeChunk(String uploadId, long offset, InputStream chunk) throws IOException {
+        ReadWriteLock sessionLock = getSessionLock(uploadId);
+        sessionLock.readLock().lock();
+        try {
+            Path sessionDir = getSessionDir(uploadId);
+            long size = Long.parseLong(loadSessionProperties(sessionDir).getProperty(SIZE_PROPERTY));
+            if (offset < 0 || offset >= size) {
+                throw new IllegalArgumentException("File Service: Chunk offset " + offset + " is outside of the file");
+            }
+
+            //the session is active as soon as a chunk arrives, not only once a slow chunk has been received
+            Files.setLastModifiedTime(sessionDir, FileTime.from(Instant.now()));
+            //the chunk is written to a temporary file first, so a partially received chunk is never visible
+            Path tempChunk = Files.createTempFile(sessionDir, "chunk-", ".tmp");
+            try {
+                long chunkSize = Files.copy(chunk, tempChunk, StandardCopyOption.REPLACE_EXISTING);
+                if (chunkSize == 0 || offset + chunkSize > size) {
+                    throw new IllegalArgumentException("File Service: Chunk of " + chunkSize + " bytes at offset "
+                            + offset + " does not fit in a file of size " + size);
+                }
+                Files.move(tempChunk, sessionDir.resolve(offset + CHUNK_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempChunk);
+            }
+            Files.setLastModifiedTime(sessionDir, FileTime.from(Instant.now()));
+            Properties sessionProperties = loadSessionProperties(sessionDir);
+            return new UploadSession(uploadId, sessionProperties.getProperty(FILE_NAME_PROPERTY), size,
+                    getReceivedBytes(sessionDir));
+        } finally {
+            sessionLock.readLock().unlock();
+            releaseSessionLock(uploadId, sessionLock);
+        }
+    }
+
+    /**
+     * Completes an upload session. The staged chunks are streamed in order into storage as a single file, and the
+     * session is deleted.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @return StorageFile representation of the file that was persisted.
+     * @throws NoSuchFileException If the upload session does not exist or has expired.
+     * @throws IOException If the file cannot be persisted an IOException will be thrown.
+     * @throws IllegalStateException If not every byte of the file has been received.
+     */
+    public StorageFile completeUploadSession(String uploadId) throws IOException {
+        ReadWriteLock sessionLock = getSessionLock(uploadId);
+        sessionLock.writeLock().lock();
+        try {
+            Path sessionDir = getSessionDir(uploadId);
+            Properties sessionProperties = loadSessionProperties(sessionDir);
+            long size = Long.parseLong(sessionProperties.getProperty(SIZE_PROPERTY));
+            long receivedBytes = getReceivedBytes(sessionDir);
+            if (receivedBytes < size) {
+                throw new IllegalStateException("File Service: Upload " + uploadId + " is missing bytes starting at "
+                        + "offset " + receivedBytes);
+            }
+
+            StorageFile storageFile;
+            try (InputStream content = openChunks(sessionDir)) {
+                storageFile = fileStorageService.storeFile(sessionProperties.getProperty(FILE_NAME_PROPERTY), content,
+                        size);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            FileSystemUtils.deleteRecursively(sessionDir);
+            LOG.info("File Service: Upload session " + uploadId + " completed as file " + storageFile.getId());
+            return storageFile;
+        } finally {
+            sessionLock.writeLock().unlock();
+            releaseSessionLock(uploadId, sessionLock);
+        }
+    }
+
+    /**
+     * Aborts an upload session and deletes its staged chunks.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @throws NoSuchFileException If the upload session does not exist or has expired.
+     * @throws IOException If the staged chunks cannot be deleted an IOException will be thrown.
+     */
+    public void abortUploadSession(String uploadId) throws IOException {
+        ReadWriteLock sessionLock = getSessionLock(uploadId);
+        sessionLock.writeLock().lock();
+        try {
+            FileSystemUtils.deleteRecursively(getSessionDir(uploadId));
+            LOG.info("File Service: Upload session " + uploadId + " aborted");
+        } finally {
+            sessionLock.writeLock().unlock();
+            releaseSessionLock(uploadId, sessionLock);
+        }
+    }
+
+    /**
+     * Deletes the upload sessions that have been inactive for longer than the upload session expiration. This is run
+     * periodically by the background cleanup of the FileStorageService. Sessions that are in use are skipped, they
+     * are not inactive.
+     */
+    public void expireUploadSessions() {
+        Instant expiredAt = Instant.now().minus(sessionExpiration);
+        try (Stream<Path> sessionDirs = Files.list(uploadLoc)) {
+            sessionDirs.forEach(sessionDir -> {
+                String uploadId = sessionDir.getFileName().toString();
+                ReadWriteLock sessionLock;
+                try {
+                    sessionLock = getSessionLock(uploadId);
+                } catch (NoSuchFileException e) {
+                    LOG.debug("File Service: Skipping " + sessionDir + ", it is not an upload session");
+                    return;
+                }
+                if (!sessionLock.writeLock().tryLock()) {
+                    return;
+                }
+                try {
+                    if (!Files.getLastModifiedTime(sessionDir).toInstant().isAfter(expiredAt)) {
+                        FileSystemUtils.deleteRecursively(sessionDir);
+                        LOG.info("File Service: Expired upload session " + uploadId);
+                    }
+                } catch (NoSuchFileException e) {
+                    //the session was completed or aborted after it was listed
+                } catch (IOException e) {
+                    LOG.error("File Service: Unable to expire upload session " + uploadId + ": " + e);
+                } finally {
+                    sessionLock.writeLock().unlock();
+                    releaseSessionLock(uploadId, sessionLock);
+                }
+            });
+        } catch (IOException e) {
+            LOG.error("File Service: Unable to list upload sessions: " + e);
+        }
+    }
+
+    private ReadWriteLock getSessionLock(String uploadId) throws NoSuchFileException {
+        try {
+            UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            throw new NoSuchFileException("File Service: Upload session not found: " + uploadId);
+        }
+        return sessionLocks.computeIfAbsent(uploadId, id -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Forgets the lock of a session once the session is gone. Sessions are never recreated, so a thread still
+     * waiting for the forgotten lock finds the session gone as well.
+     */
+    private void releaseSessionLock(String uploadId, ReadWriteLock sessionLock) {
+        if (!Files.isDirectory(uploadLoc.resolve(uploadId))) {
+            sessionLocks.remove(uploadId, sessionLock);
+        }
+    }
+
+    //the uploadId was validated when the lock of the session was taken
+    private Path getSessionDir(String uploadId) throws NoSuchFileException {
+        Path sessionDir = uploadLoc.resolve(uploadId);
+        if (!Files.isDirectory(sessionDir)) {
+            throw new NoSuchFileException("File Service: Upload session not found: " + uploadId);
+        }
+        return sessionDir;
+    }
+
+    private Properties loadSessionProperties(Path sessionDir) throws IOException {
+        Properties sessionProperties = new Properties();
+        try (InputStream in = Files.newInputStream(sessionDir.resolve(SESSION_FILE))) {
+            sessionProperties.load(in);
+        }
+        return sessionProperties;
+    }
+
+    /**
+     * Gets the staged chunks of a session ordered by their offset.
+     */
+    private TreeMap<Long, Path> getChunks(Path sessionDir) throws IOException {
+        TreeMap<Long, Path> chunks = new TreeMap<>();
+        try (Stream<Path> files = Files.list(sessionDir)) {
+            files.forEach(file -> {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(CHUNK_SUFFIX)) {
+                    chunks.put(Long.parseLong(fileName.substring(0, fileName.length() - CHUNK_SUFFIX.length())),
+                            file);
+                }
+            });
+        }
+        return chunks;
+    }
+
+    /**
+     * Gets the number of contiguous bytes, starting at offset 0, that are covered by the staged chunks.
+     */
+    private long getReceivedBytes(Path sessionDir) throws IOException {
+        long receivedBytes = 0;
+        for (Map.Entry<Long, Path> chunk : getChunks(sessionDir).entrySet()) {
+            if (chunk.getKey() > receivedBytes) {
+                break;
+            }
+            receivedBytes = Math.max(receivedBytes, chunk.getKey() + Files.size(chunk.getValue()));
+        }
+        return receivedBytes;
+    }
+
+    /**
+     * Opens a stream of the content of the file from the staged chunks. Chunks may overlap when a client resent a
+     * range with different boundaries, so the bytes already covered by a previous chunk are skipped.
+     */
+    private InputStream openChunks(Path sessionDir) throws IOException {
+        List<Path> chunkFiles = new ArrayList<>();
+        List<Long> chunkSkips = new ArrayList<>();
+        long position = 0;
+        for (Map.Entry<Long, Path> chunk : getChunks(sessionDir).entrySet()) {
+            long chunkEnd = chunk.getKey() + Files.size(chunk.getValue());
+            if (chunkEnd > position) {
+                chunkFiles.add(chunk.getValue());
+                chunkSkips.add(position - chunk.getKey());
+                position = chunkEnd;
+            }
+        }
+
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < chunkFiles.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    InputStream chunkStream = Files.newInputStream(chunkFiles.get(next));
+                    IOUtils.skipFully(chunkStream, chunkSkips.get(next));
+                    next++;
+                    return chunkStream;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+}
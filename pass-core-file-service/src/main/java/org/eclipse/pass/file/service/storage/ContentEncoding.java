@@ -0,0 +1,91 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.Properties;
+
+/**
+ * The ContentEncoding describes how the content of a file is encoded in storage, when it is compressed as it is
+ * stored. It is persisted with the stored object, so the content can be decoded on download, or passed through to
+ * clients that accept the encoding. Content that is stored as uploaded has no ContentEncoding.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService
+ */
+class ContentEncoding {
+    /**
+     * The gzip encoding, the name is the HTTP content coding of gzip.
+     */
+    static final String GZIP = "gzip";
+
+    private static final String NAME_PROPERTY = "contentEncoding";
+    private static final String DECODED_SIZE_PROPERTY = "decodedSize";
+
+    private final String name;
+    private final long decodedSize;
+
+    /**
+     * Initializes the ContentEncoding with the supplied arguments.
+     *
+     * @param name The HTTP content coding of the encoding, e.g. gzip.
+     * @param decodedSize The size of the content in bytes before it was encoded.
+     */
+    ContentEncoding(String name, long decodedSize) {
+        this.name = name;
+        this.decodedSize = decodedSize;
+    }
+
+    /**
+     * Reads a ContentEncoding from the properties it was persisted with.
+     *
+     * @param properties The properties of a stored object.
+     * @return The ContentEncoding, or null if the properties do not have one
+     */
+    static ContentEncoding fromProperties(Properties properties) {
+        String name = properties.getProperty(NAME_PROPERTY);
+        if (name == null) {
+            return null;
+        }
+        return new ContentEncoding(name, Long.parseLong(properties.getProperty(DECODED_SIZE_PROPERTY)));
+    }
+
+    /**
+     * Adds the ContentEncoding to the properties of a stored object.
+     *
+     * @param properties The properties of a stored object.
+     */
+    void toProperties(Properties properties) {
+        properties.setProperty(NAME_PROPERTY, name);
+        properties.setProperty(DECODED_SIZE_PROPERTY, Long.toString(decodedSize));
+    }
+
+    /**
+     * Get the HTTP content coding of the encoding
+     * @return name of the ContentEncoding
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get the size of the content in bytes before it was encoded
+     * @return decodedSize of the ContentEncoding
+     */
+    long getDecodedSize() {
+        return decodedSize;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * The ContentTypeDetector determines the mime type of an uploaded file once, when it is stored. The type is detected
+ * from the magic bytes at the start of the content, which are sniffed from the upload stream as it is stored, and
+ * falls back to the extension of the file name when the content has no known signature. The detected type is
+ * persisted with the stored object, so downloads never detect the type again.
+ *
+ * Signatures of container formats, e.g. ZIP, are refined by the extension of the file name, since the signature of
+ * a DOCX or an EPUB is the signature of a ZIP archive.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService
+ */
+final class ContentTypeDetector {
+    /**
+     * The number of bytes at the start of the content the mime type is detected from.
+     */
+    static final int SNIFF_LENGTH = 1024;
+
+    static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String TEXT_CONTENT_TYPE = "text/plain";
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+    private static final String OLE2_CONTENT_TYPE = "application/x-ole-storage";
+
+    private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] GIF87 = "GIF87a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GIF89 = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIFF_LE = {'I', 'I', '*', 0};
+    private static final byte[] TIFF_BE = {'M', 'M', 0, '*'};
+    private static final byte[] GZIP = {0x1f, (byte) 0x8b};
+    private static final byte[] ZIP = {'P', 'K', 3, 4};
+    private static final byte[] ZIP_EMPTY = {'P', 'K', 5, 6};
+    private static final byte[] OLE2 = {(byte) 0xd0, (byte) 0xcf, 0x11, (byte) 0xe0, (byte) 0xa1, (byte) 0xb1, 0x1a,
+        (byte) 0xe1};
+    private static final byte[] XML = "<?xml".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UTF8_BOM = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+
+    //formats stored in ZIP or OLE2 containers, and common types missing from the file name map of the JDK
+    private static final Map<String, String> EXTENSION_TYPES = Map.ofEntries(
+            Map.entry("docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+            Map.entry("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+            Map.entry("pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation"),
+            Map.entry("odt", "application/vnd.oasis.opendocument.text"),
+            Map.entry("ods", "application/vnd.oasis.opendocument.spreadsheet"),
+            Map.entry("odp", "application/vnd.oasis.opendocument.presentation"),
+            Map.entry("epub", "application/epub+zip"),
+            Map.entry("jar", "application/java-archive"),
+            Map.entry("doc", "application/msword"),
+            Map.entry("xls", "application/vnd.ms-excel"),
+            Map.entry("ppt", "application/vnd.ms-powerpoint"),
+            Map.entry("json", "application/json"),
+            Map.entry("csv", "text/csv"),
+            Map.entry("md", "text/markdown")
+    );
+
+    private ContentTypeDetector() {
+    }
+
+    /**
+     * Detects the mime type of a file from the start of its content and its file name.
+     *
+     * @param head The bytes at the start of the content, at most SNIFF_LENGTH of them are used.
+     * @param length The number of bytes in head.
+     * @param fileName The name of the file.
+     * @return The mime type of the file, or application/octet-stream if it cannot be determined
+     */
+    static String detect(byte[] head, int length, String fileName) {
+        if (startsWith(head, length, PDF)) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, PNG)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, JPEG)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, GIF87) || startsWith(head, length, GIF89)) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, TIFF_LE) || startsWith(head, length, TIFF_BE)) {
+            return "image/tiff";
+        }
+        if (startsWith(head, length, GZIP)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, ZIP) || startsWith(head, length, ZIP_EMPTY)) {
+            return refineContainer(fileName, ZIP_CONTENT_TYPE);
+        }
+        if (startsWith(head, length, OLE2)) {
+            return refineContainer(fileName, OLE2_CONTENT_TYPE);
+        }
+        String nameType = detectFromName(fileName);
+        if (nameType != null) {
+            return nameType;
+        }
+        if (startsWithXml(head, length)) {
+            return "application/xml";
+        }
+        if (length > 0 && isText(head, length)) {
+            return TEXT_CONTENT_TYPE;
+        }
+        return DEFAULT_CONTENT_TYPE;
+    }
+
+    /**
+     * Determines the mime type of a file from the extension of its name only. It is used for files that were stored
+     * before the mime type was persisted with the stored object. No I/O is performed.
+     *
+     * @param fileName The name of the file.
+     * @return The mime type of the file, or null if the extension is not known
+     */
+    static String detectFromName(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        String extensionType = EXTENSION_TYPES.get(FilenameUtils.getExtension(fileName).toLowerCase(Locale.ROOT));
+        if (extensionType != null) {
+            return extensionType;
+        }
+        return URLConnection.guessContentTypeFromName(fileName);
+    }
+
+    private static String refineContainer(String fileName, String containerType) {
+        String nameType = detectFromName(fileName);
+        return nameType != null ? nameType : containerType;
+    }
+
+    private static boolean startsWith(byte[] head, int length, byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (head[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithXml(byte[] head, int length) {
+        int offset = startsWith(head, length, UTF8_BOM) ? UTF8_BOM.length : 0;
+        while (offset < length && Character.isWhitespace(head[offset])) {
+            offset++;
+        }
+        if (length - offset < XML.length) {
+            return false;
+        }
+        for (int i = 0; i < XML.length; i++) {
+            if (head[offset + i] != XML[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isText(byte[] head, int length) {
+        //control characters other than tab, line feed, form feed, carriage return and escape do not occur in text
+        for (int i = 0; i < Math.min(length, SNIFF_LENGTH); i++) {
+            int b = head[i] & 0xff;
+            if (b < 0x20 && b != '\t' && b != '\n' && b != '\f' && b != '\r' && b != 0x1b) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * The DedupIndex is the index of content-addressed deduplication. It maps the SHA-512 digest of content to the OCFL
+ * object that stores the content, and every fileId to the OCFL object that holds its content. When a file is uploaded
+ * whose content is already stored, the new fileId references the existing OCFL object instead of storing the content
+ * again. Each OCFL object counts the fileIds that reference it and is only purged when the last of them is deleted.
+ *
+ * The index is persisted as small property files in the index directory, so it survives a restart:
+ *  - digests: the OCFL object of each digest
+ *  - objects: the digest and the number of references of each OCFL object
+ *  - files: the OCFL object of each fileId
+ * Every change of the index is made under the lock of the index, and every file is replaced atomically.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService
+ */
+class DedupIndex {
+    private static final String DIGEST_DIR = "digests";
+    private static final String OBJECT_DIR = "objects";
+    private static final String FILE_DIR = "files";
+    private static final String OBJECT_ID_PROPERTY = "objectId";
+    private static final String DIGEST_PROPERTY = "digest";
+    private static final String REFERENCES_PROPERTY = "references";
+
+    private final Path indexDir;
+
+    /**
+     * Initializes the DedupIndex.
+     *
+     * @param indexDir The directory the index is persisted in. It is created if it does not exist.
+     * @throws IOException If the index directory cannot be created an IOException will be thrown.
+     */
+    DedupIndex(Path indexDir) throws IOException {
+        this.indexDir = indexDir;
+        Files.createDirectories(indexDir.resolve(DIGEST_DIR));
+        Files.createDirectories(indexDir.resolve(OBJECT_DIR));
+        Files.createDirectories(indexDir.resolve(FILE_DIR));
+    }
+
+    /**
+     * Adds a reference of the fileId to the OCFL object that stores the content with the digest, if there is one.
+     *
+     * @param digest The hex encoded SHA-512 digest of the content.
+     * @param fileId The fileId of the uploaded file.
+     * @return The id of the OCFL object the fileId now references, or null if the content is not stored yet
+     * @throws IOException If the index cannot be read or written an IOException will be thrown.
+     */
+    synchronized String addReference(String digest, String fileId) throws IOException {
+        Properties digestEntry = load(getDigestPath(digest));
+        if (digestEntry == null) {
+            return null;
+        }
+        String objectId = digestEntry.getProperty(OBJECT_ID_PROPERTY);
+        Properties objectEntry = load(getObjectPath(objectId));
+        long references = Long.parseLong(objectEntry.getProperty(REFERENCES_PROPERTY));
+        objectEntry.setProperty(REFERENCES_PROPERTY, Long.toString(references + 1));
+        store(getObjectPath(objectId), objectEntry);
+        store(getFilePath(fileId), fileEntry(objectId));
+        return objectId;
+    }
+
+    /**
+     * Registers a new OCFL object that stores content with the digest. The OCFL object id is the fileId of the file it
+     * was stored for, which is its first reference.
+     *
+     * @param digest The hex encoded SHA-512 digest of the content.
+     * @param fileId The fileId of the file, which is also the id of the OCFL object.
+     * @throws IOException If the index cannot be written an IOException will be thrown.
+     */
+    synchronized void register(String digest, String fileId) throws IOException {
+        Properties objectEntry = new Properties();
+        objectEntry.setProperty(DIGEST_PROPERTY, digest);
+        objectEntry.setProperty(REFERENCES_PROPERTY, "1");
+        store(getObjectPath(fileId), objectEntry);
+        store(getFilePath(fileId), fileEntry(fileId));
+        //if the same content was stored concurrently, the first registered object stays the one that is reused
+        if (load(getDigestPath(digest)) == null) {
+            Properties digestEntry = new Properties();
+            digestEntry.setProperty(OBJECT_ID_PROPERTY, fileId);
+            store(getDigestPath(digest), digestEntry);
+        }
+    }
+
+    /**
+     * Gets the id of the OCFL object that holds the content of the fileId.
+     *
+     * @param fileId The fileId of the file.
+     * @return The id of the OCFL object, which is the fileId itself if the file is not in the index, or null if the
+     * file was deleted while its OCFL object is still referenced by other fileIds
+     * @throws IOException If the index cannot be read an IOException will be thrown.
+     */
+    String getObjectId(String fileId) throws IOException {
+        Properties fileEntry = load(getFilePath(fileId));
+        if (fileEntry != null) {
+            return fileEntry.getProperty(OBJECT_ID_PROPERTY);
+        }
+        return isReferencedObject(fileId) ? null : fileId;
+    }
+
+    /**
+     * Removes the reference of the fileId to its OCFL object.
+     *
+     * @param fileId The fileId of the deleted file.
+     * @return The id of the OCFL object if it is no longer referenced and should be purged, otherwise null. A fileId
+     * that is not in the index, e.g. one stored before deduplication was enabled, is its own OCFL object and is
+     * returned as is.
+     * @throws IOException If the index cannot be read or written an IOException will be thrown.
+     */
+    synchronized String removeReference(String fileId) throws IOException {
+        Properties fileEntry = load(getFilePath(fileId));
+        if (fileEntry == null) {
+            //the file was already deleted if its OCFL object is still referenced by other fileIds
+            return isReferencedObject(fileId) ? null : fileId;
+        }
+        String objectId = fileEntry.getProperty(OBJECT_ID_PROPERTY);
+        Files.deleteIfExists(getFilePath(fileId));
+        Properties objectEntry = load(getObjectPath(objectId));
+        if (objectEntry == null) {
+            return objectId;
+        }
+        long references = Long.parseLong(objectEntry.getProperty(REFERENCES_PROPERTY)) - 1;
+        if (references > 0) {
+            objectEntry.setProperty(REFERENCES_PROPERTY, Long.toString(references));
+            store(getObjectPath(objectId), objectEntry);
+            return null;
+        }
+        Files.deleteIfExists(getObjectPath(objectId));
+        Path digestPath = getDigestPath(objectEntry.getProperty(DIGEST_PROPERTY));
+        Properties digestEntry = load(digestPath);
+        if (digestEntry != null && objectId.equals(digestEntry.getProperty(OBJECT_ID_PROPERTY))) {
+            Files.deleteIfExists(digestPath);
+        }
+        return objectId;
+    }
+
+    private boolean isReferencedObject(String objectId) {
+        return Files.exists(getObjectPath(objectId));
+    }
+
+    private Properties fileEntry(String objectId) {
+        Properties fileEntry = new Properties();
+        fileEntry.setProperty(OBJECT_ID_PROPERTY, objectId);
+        return fileEntry;
+    }
+
+    private Path getDigestPath(String digest) {
+        return indexDir.resolve(DIGEST_DIR).resolve(digest + ".properties");
+    }
+
+    private Path getObjectPath(String objectId) {
+        return indexDir.resolve(OBJECT_DIR).resolve(toFileName(objectId));
+    }
+
+    private Path getFilePath(String fileId) {
+        return indexDir.resolve(FILE_DIR).resolve(toFileName(fileId));
+    }
+
+    private String toFileName(String id) {
+        //fileIds contain characters that are not valid in file names, e.g. the slash between uuid and file name
+        return UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8)) + ".properties";
+    }
+
+    private Properties load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            return properties;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void store(Path path, Properties properties) throws IOException {
+        Path tempPath = Files.createTempFile(path.getParent(), "entry-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                properties.store(out, "Pass-Core File Service dedup index");
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.time.Instant;
+
+/**
+ * The FileMetadata is the metadata of the most recent version of a file in the storage backend, e.g. the OCFL
+ * repository. It is read from the backend once and cached by the FileStorageService, so repeated lookups of the same
+ * file do not parse the inventory or make requests to S3 again. Files are never updated after they are stored, so the
+ * metadata of a fileId does not change until the file is deleted.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService
+ */
+class FileMetadata {
+    private final String storageRelativePath;
+    private final String logicalPath;
+    private final String digest;
+    private final long size;
+    private final Instant lastModified;
+    private final String contentType;
+    private final ContentEncoding contentEncoding;
+
+    /**
+     * Initializes the FileMetadata with the supplied arguments.
+     *
+     * @param storageRelativePath The path of the content file relative to the OCFL storage root.
+     * @param logicalPath The logical path of the file in the OCFL object.
+     * @param digest The hex encoded SHA-512 digest of the content.
+     * @param size The size of the content in storage in bytes.
+     * @param lastModified The time the OCFL version was created.
+     * @param contentType The mime type of the file, detected when it was stored.
+     * @param contentEncoding The encoding of the content in storage, or null if it is stored as uploaded.
+     */
+    FileMetadata(String storageRelativePath, String logicalPath, String digest, long size, Instant lastModified,
+                 String contentType, ContentEncoding contentEncoding) {
+        this.storageRelativePath = storageRelativePath;
+        this.logicalPath = logicalPath;
+        this.digest = digest;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Gets the mime type persisted with a stored object, or the mime type of the extension of its logical path if
+     * the object was stored before the mime type was persisted. No I/O is performed.
+     *
+     * @param contentType The mime type persisted with the object, or null if none was persisted.
+     * @param logicalPath The logical path of the file.
+     * @return The mime type of the file, or application/octet-stream if it cannot be determined
+     */
+    static String orDefaultContentType(String contentType, String logicalPath) {
+        if (contentType != null) {
+            return contentType;
+        }
+        String nameType = ContentTypeDetector.detectFromName(logicalPath);
+        return nameType != null ? nameType : ContentTypeDetector.DEFAULT_CONTENT_TYPE;
+    }
+
+    /**
+     * Get the path of the content file relative to the OCFL storage root. When using S3, this is the key of the
+     * content file in the S3 bucket relative to the repo prefix.
+     * @return storageRelativePath of the file
+     */
+    String getStorageRelativePath() {
+        return storageRelativePath;
+    }
+
+    /**
+     * Get the logical path of the file in the OCFL object
+     * @return logicalPath of the file
+     */
+    String getLogicalPath() {
+        return logicalPath;
+    }
+
+    /**
+     * Get the hex encoded SHA-512 digest of the content in storage
+     * @return digest of the file
+     */
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Get the size of the file in bytes as it was uploaded, before it was encoded in storage
+     * @return size of the file
+     */
+    long getSize() {
+        return contentEncoding != null ? contentEncoding.getDecodedSize() : size;
+    }
+
+    /**
+     * Get the size of the content in storage in bytes, after it was encoded
+     * @return storedSize of the file
+     */
+    long getStoredSize() {
+        return size;
+    }
+
+    /**
+     * Get the time the OCFL version was created
+     * @return lastModified time of the file
+     */
+    Instant getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the mime type of the file
+     * @return contentType of the file
+     */
+    String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get the encoding of the content in storage
+     * @return contentEncoding of the file, or null if the content is stored as uploaded
+     */
+    ContentEncoding getContentEncoding() {
+        return contentEncoding;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * The FileStorageInitializer optionally initializes the FileStorageService in the background at startup. The
+ * FileStorageService is lazily loaded, so without it the first request to the File Service builds the OCFL repository,
+ * checks the storage directories and the S3 bucket, and pays for all of it in its latency.
+ *
+ * When eager initialization is enabled in the StorageProperties, the FileStorageService is initialized on a background
+ * thread once the application has started, so startup is not delayed. The readiness of the application as a whole is
+ * not changed, the other services do not wait for the File Service; the state of the initialization is reported by
+ * GET /file/ready instead. A request that arrives during the initialization waits for it rather than initializing the
+ * service a second time. If the initialization fails, the FileStorageService is initialized lazily on the first
+ * request, as without eager initialization.
+ *
+ * Without eager initialization nothing is done at startup. The FileStorageService starts its background tasks, e.g.
+ * resuming queued purges, itself once it is created, whenever that is.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService
+ */
+@Component
+public class FileStorageInitializer {
+    private static final Logger LOG = LoggerFactory.getLogger(FileStorageInitializer.class);
+
+    /**
+     * The states of the initialization of the FileStorageService.
+     */
+    public enum State {
+        /** Eager initialization is disabled, the FileStorageService is initialized on the first request. */
+        DISABLED,
+        /** The FileStorageService has not been initialized yet, or is being initialized. */
+        INITIALIZING,
+        /** The FileStorageService is initialized. */
+        READY,
+        /** The initialization failed, the FileStorageService is initialized on the first request. */
+        FAILED
+    }
+
+    private final FileStorageService fileStorageService;
+    private volatile State state;
+
+    /**
+     * FileStorageInitializer Class constructor.
+     *
+     * @param fileStorageService The lazily loaded FileStorageService.
+     * @param storageConfiguration A set of configuration properties of the File Service.
+     */
+    @Autowired
+    public FileStorageInitializer(@Lazy FileStorageService fileStorageService,
+                                  StorageConfiguration storageConfiguration) {
+        this.fileStorageService = fileStorageService;
+        this.state = storageConfiguration.getStorageProperties().isEagerInitEnabled()
+                ? State.INITIALIZING : State.DISABLED;
+    }
+
+    /**
+     * Starts the initialization of the FileStorageService on a background thread, if eager initialization is
+     * enabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (state != State.INITIALIZING) {
+            return;
+        }
+        Thread initThread = new Thread(this::initialize, "file-service-init");
+        initThread.setDaemon(true);
+        initThread.start();
+    }
+
+    /**
+     * Gets the state of the initialization of the FileStorageService.
+     *
+     * @return The state of the initialization
+     */
+    public State getState() {
+        return state;
+    }
+
+    private void initialize() {
+        long startNanos = System.nanoTime();
+        try {
+            //any call on the lazy proxy creates the FileStorageService
+            fileStorageService.getPendingPurgeCount();
+            state = State.READY;
+            LOG.info("File Service: FileStorageService initialized in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+        } catch (RuntimeException e) {
+            state = State.FAILED;
+            LOG.error("File Service: Eager initialization of the FileStorageService failed, it will be initialized " +
+                    "on the first request: " + e);
+        }
+    }
+}
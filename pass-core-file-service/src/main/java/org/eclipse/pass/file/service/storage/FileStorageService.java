@@ -16,44 +16,87 @@
  */
 package org.eclipse.pass.file.service.storage;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.URLConnection;
+import java.net.URL;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.PreDestroy;
 
 import edu.wisc.library.ocfl.api.OcflRepository;
+import edu.wisc.library.ocfl.api.exception.FixityCheckException;
 import edu.wisc.library.ocfl.api.exception.NotFoundException;
-import edu.wisc.library.ocfl.api.model.FileDetails;
-import edu.wisc.library.ocfl.api.model.ObjectVersionId;
-import edu.wisc.library.ocfl.api.model.VersionDetails;
-import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.api.exception.OcflIOException;
+import edu.wisc.library.ocfl.api.io.FixityCheckInputStream;
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
 import edu.wisc.library.ocfl.aws.OcflS3Client;
 import edu.wisc.library.ocfl.core.OcflRepositoryBuilder;
 import edu.wisc.library.ocfl.core.extension.storage.layout.config.HashedNTupleLayoutConfig;
 import edu.wisc.library.ocfl.core.path.constraint.ContentPathConstraints;
+import edu.wisc.library.ocfl.core.storage.cloud.KeyNotFoundException;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Safelist;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 
 /**
  * The FileStorageService is responsible for the implementation of the persistence of files to their respective
@@ -61,10 +104,13 @@ import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
  * {@link org.eclipse.pass.file.service.storage.StorageServiceType StorageServiceType} enum.
  * The FileStorageService depends on a properly configured repository. The environment variables are externalized
  * in the .ENV file. The FileStorageService is lazily loaded to ensure that the configuration is properly loaded and
- * to minimize the startup time. The FileStorageService currently supports File System and S3 storage.
+ * to minimize the startup time. The FileStorageService currently supports File System and S3 storage, as OCFL
+ * repositories, and a plain File System storage without OCFL. Each type of storage is implemented by a StorageBackend;
+ * the FileStorageService adds caching, deduplication and purging on top of the backend.
  * A configuration of File System requires that the environment variables are properly set in the env file and
  * the respective directories have read/write access. For a S3 configuration to work the client needs the
- * following permissions: s3:PutObject, s3:GetObject,s3:DeleteObject, s3:ListBucket, s3:AbortMultipartUpload.
+ * following permissions: s3:PutObject, s3:GetObject,s3:DeleteObject, s3:ListBucket, s3:AbortMultipartUpload, and
+ * s3:CreateBucket if the bucket does not exist yet.
  *
  * The directory structure for the File System is as follows:
  *  - rootDir: This is the root directory for the File System. This is set in the
@@ -72,27 +118,61 @@ import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
  *  - ocflDir: This is the directory where files are stored in the OCFL repository. This is a child of the rootDir.
  *  - workDir: This is a temporary working directory that is required by the OcflRepositoryBuilder. This is a child of
  *       the rootDir. Both the ocflDir and workDir are required to be on the same mount.
- *  - tempDir: This is a temporary directory that is used to move files to/from the OCFL repository and staging them
- *      for download. This is a child of the rootDir.
+ *  - plainDir: This is the directory where files are stored by the PLAIN_FILE_SYSTEM storage type, directly by the
+ *      UUID of their fileId without OCFL inventories. This is a child of the rootDir, on the same mount as the workDir.
+ *  - tempDir: This is a temporary directory that was used by earlier versions to stage files for download. Files are
+ *      no longer staged, each request streams the content directly, but stale files that are left in the tempDir are
+ *      deleted by a background janitor. This is a child of the rootDir.
  *
- * Note, the S3 OCFL implementation does not cache locally and therefore performs much slower compared to the file
- * system implementation, most notably on large files.
+ * Note, the S3 OCFL implementation does not cache locally by default and therefore performs much slower compared to
+ * the file system implementation, most notably on large files. An optional bounded local cache of files read from S3
+ * can be enabled in the StorageProperties. Cached files are keyed by their fileId and the digest of their content, so a
+ * new version of a file is never served from a stale cache entry. Alternatively, downloads of S3 files can be
+ * redirected to short-lived pre-signed URLs, so large files are downloaded from S3 without passing through the JVM.
+ *
+ * Optionally, uploaded files are deduplicated by content. A file whose SHA-512 digest matches content that is already
+ * stored references the existing OCFL object instead of storing the content again, and an OCFL object is only purged
+ * when the last file referencing it is deleted. The index of digests and references is kept in the dedup directory,
+ * a child of the rootDir, which must be persistent like the rootDir itself.
+ *
+ * Optionally, uploaded files of compressible mime types, e.g. CSV, XML and JSON supplementary files, are compressed
+ * with gzip as they are stored. The encoding is persisted with the object, and the content is decompressed as it is
+ * read, so compression is transparent to the readers of files. The stored content can also be read as it is, to pass
+ * it through to clients that accept gzip.
+ *
+ * The metadata of files (content path, digest, size and mime type) is read from the OCFL inventory once and kept in a
+ * bounded in-memory cache, so repeated downloads of a file do not parse the inventory or make requests to S3 for
+ * metadata. The metadata of a file is removed from the cache when the file is deleted. The mime type is detected from
+ * the magic bytes of the upload when a file is stored and persisted with its object, so it is never probed on
+ * download. A file whose content is deduplicated has the mime type the content was first stored with.
  *
  * @author Tim Sanders
  * @see StorageServiceType
+ * @see StorageBackend
  */
 @Lazy
 @Service
 public class FileStorageService {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileStorageService.class);
+    private static final int FIXITY_BUFFER_SIZE = 64 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
     private Path rootLoc;
     private Path ocflLoc;
     private Path workLoc;
     private Path tempLoc;
     private StorageServiceType storageType;
-    private OcflRepository ocflRepository;
+    private StorageBackend storageBackend;
     private S3Client cloudS3Client;
+    private OcflS3Client ocflS3Client;
+    private S3Presigner s3Presigner;
+    private LocalFileCache s3FileCache;
+    private Map<String, FileMetadata> fileMetadataCache;
+    private DedupIndex dedupIndex;
+    private List<MimeType> compressionContentTypes;
+    private PurgeQueue purgeQueue;
+    private Duration tempFileExpiration;
+    private ScheduledExecutorService tempFileJanitor;
     private StorageProperties storageProperties;
     private String bucketName;
     private String repoPrefix;
@@ -112,6 +192,14 @@ public class FileStorageService {
     public FileStorageService(StorageConfiguration storageConfiguration) throws IOException {
         this.storageProperties = storageConfiguration.getStorageProperties();
         storageType = this.storageProperties.getStorageType();
+        int metadataCacheSize = this.storageProperties.getMetadataCacheSize();
+        //the least recently used metadata is evicted when the cache is full
+        fileMetadataCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileMetadata> eldest) {
+                return size() > metadataCacheSize;
+            }
+        });
 
         if (this.storageProperties.getStorageRootDir() == null
                 || this.storageProperties.getStorageRootDir().isEmpty()) {
@@ -130,12 +218,9 @@ public class FileStorageService {
         this.tempLoc = Paths.get(this.rootLoc.toString(),this.storageProperties.getStorageTempDir());
 
         try {
-            if (!Files.exists(rootLoc)) {
-                Files.createDirectory(rootLoc);
-            }
-            if (!Files.exists(workLoc)) {
-                Files.createDirectory(workLoc);
-            }
+            //createDirectories does not fail if the directory is created concurrently
+            Files.createDirectories(rootLoc);
+            Files.createDirectories(workLoc);
             if (!Files.isReadable(workLoc) || !Files.isWritable(workLoc)) {
                 throw new IOException("File Service: No permission to read/write work directory.");
             }
@@ -149,17 +234,16 @@ public class FileStorageService {
         if (storageType.equals(StorageServiceType.FILE_SYSTEM)) {
             LOG.info("File Service: FILE_SYSTEM Storage Type");
             try {
-                if (!Files.exists(ocflLoc)) {
-                    Files.createDirectory(ocflLoc);
-                }
+                Files.createDirectories(ocflLoc);
                 if (!Files.isReadable(ocflLoc) || !Files.isWritable(ocflLoc)) {
                     throw new IOException("File Service: No permission to read/write OCFL directory.");
                 }
-                ocflRepository = new OcflRepositoryBuilder()
+                OcflRepository ocflRepository = new OcflRepositoryBuilder()
                         .defaultLayoutConfig(new HashedNTupleLayoutConfig())
                         .storage(storage -> storage.fileSystem(this.ocflLoc))
                         .workDir(this.workLoc)
                         .build();
+                storageBackend = new OcflStorageBackend(ocflRepository, ocflLoc);
             } catch (IOException e) {
                 throw new IOException("File Service: Unable to setup File Storage directories: " + e);
             }
@@ -182,62 +266,225 @@ public class FileStorageService {
                 repoPrefix = storageProperties.getS3RepoPrefix().get();
             }
 
-            //endpoint is not required, but if one is supplied then S3 client is built with endpoint override
-            if (storageProperties.getS3Endpoint().isPresent()) {
-                String endpoint = storageProperties.getS3Endpoint().get();
-                cloudS3Client = S3Client.builder()
-                        .credentialsProvider(AnonymousCredentialsProvider.create())
-                        .region(region)
-                        .endpointOverride(URI.create(endpoint))
-                        .build();
-                LOG.info("File Service: S3 client built with endpoint override");
-            } else if (!storageProperties.getS3Endpoint().isPresent() && storageProperties.getRegion().isPresent()) {
-                //TODO credentials will need to be setup for S3
-                cloudS3Client = S3Client.builder()
-                        .credentialsProvider(AnonymousCredentialsProvider.create())
-                        .region(region)
-                        .build();
-                LOG.info("File Service: S3 client built");
-            }
+            cloudS3Client = buildS3Client();
 
-            if (!cloudS3Client.listBuckets().buckets().stream().anyMatch(b -> b.name().equals(bucketName))) {
+            //only the configured bucket is checked, listing all buckets is slow on accounts with many buckets
+            try {
+                cloudS3Client.headBucket(HeadBucketRequest.builder().bucket(bucketName).build());
+            } catch (NoSuchBucketException e) {
                 cloudS3Client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
-            }
-
-            if (cloudS3Client == null) {
-                throw new IOException("File Service: S3 client is not configured");
+                LOG.info("File Service: S3 bucket " + bucketName + " was created");
             }
 
             //repoPrefix is optional and can be built with or without it
+            OcflS3Client.Builder ocflS3ClientBuilder = OcflS3Client.builder()
+                    .s3Client(cloudS3Client)
+                    .bucket(bucketName);
             if (storageProperties.getS3RepoPrefix().isPresent()) {
-                ocflRepository = new OcflRepositoryBuilder()
-                        .defaultLayoutConfig(new HashedNTupleLayoutConfig())
-                        .contentPathConstraints(ContentPathConstraints.cloud())
-                        .storage(storage -> storage
-                                .cloud(OcflS3Client.builder()
-                                        .s3Client(cloudS3Client)
-                                        .bucket(bucketName)
-                                        .repoPrefix(repoPrefix)
-                                        .build()))
-                        .workDir(workLoc)
-                        .build();
-            } else {
-                ocflRepository = new OcflRepositoryBuilder()
-                        .defaultLayoutConfig(new HashedNTupleLayoutConfig())
-                        .contentPathConstraints(ContentPathConstraints.cloud())
-                        .storage(storage -> storage
-                                .cloud(OcflS3Client.builder()
-                                        .s3Client(cloudS3Client)
-                                        .bucket(bucketName)
-                                        .build()))
-                        .workDir(workLoc)
-                        .build();
+                ocflS3ClientBuilder.repoPrefix(repoPrefix);
             }
+            ocflS3Client = ocflS3ClientBuilder.build();
+            //large files are uploaded as multipart uploads with parts sent concurrently
+            ParallelS3CloudClient parallelS3Client = new ParallelS3CloudClient(ocflS3Client, cloudS3Client,
+                    bucketName, storageProperties.getS3MultipartPartSize().toBytes(),
+                    storageProperties.getS3MultipartConcurrency());
+            OcflRepository ocflRepository = new OcflRepositoryBuilder()
+                    .defaultLayoutConfig(new HashedNTupleLayoutConfig())
+                    .contentPathConstraints(ContentPathConstraints.cloud())
+                    .storage(storage -> storage.cloud(parallelS3Client))
+                    .workDir(workLoc)
+                    .build();
+            storageBackend = new OcflStorageBackend(ocflRepository, ocflS3Client, cloudS3Client, bucketName);
             LOG.info("File Service: S3 client is configured and OCFL repository is built");
+
+            if (storageProperties.isS3PresignedDownloadEnabled()) {
+                //URLs cannot be pre-signed without credentials
+                if (storageProperties.getS3CredentialsProvider() == S3CredentialsProviderType.ANONYMOUS) {
+                    throw new IOException("File Service: Pre-signed downloads require S3 credentials, the S3 " +
+                            "credentials provider must not be ANONYMOUS");
+                }
+                s3Presigner = buildS3Presigner();
+                LOG.info("File Service: Downloads of S3 files are redirected to pre-signed URLs");
+            }
+
+            if (storageProperties.isS3CacheEnabled()) {
+                Path cacheLoc = storageProperties.getS3CacheDir().map(Paths::get)
+                        .orElse(Paths.get(this.rootLoc.toString(), "s3-cache"));
+                s3FileCache = new LocalFileCache(cacheLoc, storageProperties.getS3CacheMaxSize().toBytes(),
+                        storageProperties.getS3CacheMaxAge());
+                LOG.info("File Service: S3 files are cached locally in " + cacheLoc);
+            }
+        } else if (storageType.equals(StorageServiceType.PLAIN_FILE_SYSTEM)) {
+            LOG.info("File Service: PLAIN_FILE_SYSTEM Storage Type");
+            try {
+                storageBackend = new PlainFileSystemStorageBackend(Paths.get(this.rootLoc.toString(), "plain"),
+                        workLoc);
+            } catch (IOException e) {
+                throw new IOException("File Service: Unable to setup File Storage directories: " + e);
+            }
         } else {
             throw new IOException("File Service: File Service Type is missing or incorrect in the " +
                     "environment variables.");
         }
+
+        if (storageProperties.isDedupEnabled()) {
+            dedupIndex = new DedupIndex(Paths.get(this.rootLoc.toString(), "dedup"));
+            LOG.info("File Service: Deduplication of uploaded files is enabled");
+        }
+
+        if (storageProperties.isCompressionEnabled()) {
+            compressionContentTypes = storageProperties.getCompressionContentTypes().stream()
+                    .map(MimeTypeUtils::parseMimeType)
+                    .collect(Collectors.toList());
+            LOG.info("File Service: Uploaded files of types " + compressionContentTypes + " are compressed");
+        }
+
+        purgeQueue = new PurgeQueue(Paths.get(this.rootLoc.toString(), "purge-queue"), storageBackend::purge,
+                storageProperties.getPurgeConcurrency(), storageProperties.getPurgeRetryDelay(),
+                storageProperties.getPurgeMaxAttempts());
+
+        tempFileExpiration = storageProperties.getTempFileExpiration();
+        long cleanupPeriodMillis = Math.max(TimeUnit.MINUTES.toMillis(1), tempFileExpiration.toMillis() / 4);
+        tempFileJanitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-service-temp-janitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        tempFileJanitor.scheduleWithFixedDelay(this::cleanupTempFiles, 0, cleanupPeriodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds the S3 client with the connection pool, timeouts, retry policy, checksum validation and credentials
+     * configured in the StorageProperties.
+     *
+     * @return The S3 client
+     */
+    private S3Client buildS3Client() {
+        S3ClientBuilder s3ClientBuilder = S3Client.builder()
+                .credentialsProvider(buildCredentialsProvider())
+                .region(region)
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(storageProperties.getS3MaxConnections())
+                        .connectionTimeout(storageProperties.getS3ConnectionTimeout())
+                        .connectionAcquisitionTimeout(storageProperties.getS3ConnectionAcquisitionTimeout())
+                        .socketTimeout(storageProperties.getS3SocketTimeout()))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .retryPolicy(RetryPolicy.builder(storageProperties.getS3RetryMode())
+                                .numRetries(storageProperties.getS3MaxRetries())
+                                .build())
+                        .build())
+                .serviceConfiguration(buildS3Configuration());
+        //endpoint is not required, but if one is supplied then S3 client is built with endpoint override
+        if (storageProperties.getS3Endpoint().isPresent()) {
+            s3ClientBuilder.endpointOverride(URI.create(storageProperties.getS3Endpoint().get()));
+            LOG.info("File Service: S3 client built with endpoint override");
+        } else {
+            LOG.info("File Service: S3 client built");
+        }
+        return s3ClientBuilder.build();
+    }
+
+    /**
+     * Builds the presigner of download URLs of S3 content, with the same credentials, region and endpoint as the S3
+     * client.
+     *
+     * @return The S3 presigner
+     */
+    private S3Presigner buildS3Presigner() {
+        S3Presigner.Builder s3PresignerBuilder = S3Presigner.builder()
+                .credentialsProvider(buildCredentialsProvider())
+                .region(region)
+                .serviceConfiguration(buildS3Configuration());
+        storageProperties.getS3Endpoint().ifPresent(endpoint -> s3PresignerBuilder.endpointOverride(
+                URI.create(endpoint)));
+        return s3PresignerBuilder.build();
+    }
+
+    private AwsCredentialsProvider buildCredentialsProvider() {
+        return storageProperties.getS3CredentialsProvider() == S3CredentialsProviderType.DEFAULT
+                ? DefaultCredentialsProvider.create()
+                : AnonymousCredentialsProvider.create();
+    }
+
+    private S3Configuration buildS3Configuration() {
+        return S3Configuration.builder()
+                .checksumValidationEnabled(storageProperties.isS3ChecksumValidationEnabled())
+                .build();
+    }
+
+    /**
+     * Expires abandoned chunked upload sessions as part of the background cleanup. The expiry starts with the other
+     * background tasks of the FileStorageService, so upload sessions left before a restart expire even if the upload
+     * API is not used.
+     *
+     * @param chunkedUploadService The lazily loaded ChunkedUploadService that owns the upload sessions.
+     */
+    @Autowired
+    public void setChunkedUploadService(@Lazy ChunkedUploadService chunkedUploadService) {
+        Duration sessionExpiration = storageProperties.getUploadSessionExpiration();
+        long expiryPeriodMillis = Math.max(TimeUnit.MINUTES.toMillis(1), sessionExpiration.toMillis() / 4);
+        tempFileJanitor.scheduleWithFixedDelay(() -> {
+            //an exception would cancel the periodic expiry
+            try {
+                chunkedUploadService.expireUploadSessions();
+            } catch (RuntimeException e) {
+                LOG.error("File Service: Unable to expire upload sessions: " + e);
+            }
+        }, 0, expiryPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background cleanup of stale temporary files and the purge queue. Purges that have not completed are
+     * resumed on the next start.
+     */
+    @PreDestroy
+    public void shutdown() {
+        tempFileJanitor.shutdownNow();
+        purgeQueue.shutdown();
+        if (s3Presigner != null) {
+            s3Presigner.close();
+        }
+    }
+
+    /**
+     * Deletes temporary files that are older than the configured temp file expiration. These are files left in the
+     * temp directory by earlier versions or by a crash, and partially written entries of the local cache of S3 files.
+     * Idle entries of the local cache are evicted as well. This runs periodically in the background and only deletes
+     * files that are no longer in use by any request.
+     */
+    public void cleanupTempFiles() {
+        Instant expiredAt = Instant.now().minus(tempFileExpiration);
+        if (Files.isDirectory(tempLoc)) {
+            try (Stream<Path> tempFiles = Files.list(tempLoc)) {
+                tempFiles.forEach(tempFile -> {
+                    try {
+                        if (!Files.getLastModifiedTime(tempFile).toInstant().isAfter(expiredAt)) {
+                            FileSystemUtils.deleteRecursively(tempFile);
+                            LOG.info("File Service: Deleted stale temp file " + tempFile);
+                        }
+                    } catch (IOException e) {
+                        LOG.error("File Service: Unable to delete stale temp file " + tempFile + ": " + e);
+                    }
+                });
+            } catch (IOException e) {
+                LOG.error("File Service: Unable to list the temp directory: " + e);
+            }
+        }
+        if (s3FileCache != null) {
+            s3FileCache.deleteTempFiles(expiredAt);
+            s3FileCache.evict();
+        }
+    }
+
+    /**
+     * Gets the OCFL working directory of the File Service. It is on the same mount as the OCFL storage root and is
+     * used by other storage components to stage content before it is committed to the repository.
+     *
+     * @return The path of the OCFL working directory
+     */
+    Path getWorkDir() {
+        return workLoc;
     }
 
     /**
@@ -252,53 +499,94 @@ public class FileStorageService {
      * @see StorageFile
      */
     public StorageFile storeFile(MultipartFile mFile) throws IOException {
-        //TODO: refactor so that file is not stored with original file name, but with a UUID
+        try (InputStream uploadStream = mFile.getInputStream()) {
+            return storeFile(mFile.getOriginalFilename(), uploadStream, mFile.getSize());
+        }
+    }
+
+    /**
+     * Persists the content of a stream as a file to the repository/storage indicated in the StorageProperties. The
+     * stream is consumed but not closed.
+     *
+     * @param originalFileName The original name of the file that is to be persisted.
+     * @param content The content of the file.
+     * @param size The size of the content in bytes.
+     * @return StorageFile representation of the file that was persisted. It contains meta information about the file
+     * for example the name, file size and mime type.
+     * @throws IOException If the content cannot be read, paths are incorrect, or the appropriate permissions
+     * are not configured on the repository an IOException will be thrown.
+     *
+     * @see StorageFile
+     */
+    public StorageFile storeFile(String originalFileName, InputStream content, long size) throws IOException {
         StorageFile storageFile = null;
         //NOTE: the work directory on the ocfl-java client should be located on the same mount as the OCFL storage root.
         try {
             //remove any unsafe characters from the original file name and the hyphen, since it is used as a delimiter
-            String origFileNameExt = Jsoup.clean(mFile.getOriginalFilename(), Safelist.basic());
+            String origFileNameExt = Jsoup.clean(originalFileName, Safelist.basic());
             String fileExt = FilenameUtils.getExtension(origFileNameExt);
             String fileUuid = UUID.randomUUID().toString();
             String fileId = fileUuid + "/" + origFileNameExt;
-            String mimeType = URLConnection.guessContentTypeFromName(origFileNameExt);
+            //the mime type is detected from the start of the upload stream once, and persisted with the object,
+            //so downloads do not detect it again
+            byte[] head = new byte[ContentTypeDetector.SNIFF_LENGTH];
+            int headLength = content.readNBytes(head, 0, head.length);
+            String contentType = ContentTypeDetector.detect(head, headLength, origFileNameExt);
+            content = new SequenceInputStream(new ByteArrayInputStream(head, 0, headLength), content);
             //changing the stored file name to UUID to prevent any issues with long file names
             //e.g. 260 char limit on the path in Windows. Original filename is preserved in the fileId.
             String ocflRepoFileName = fileUuid + "." + fileExt;
 
-            if (!Files.exists(Paths.get(tempLoc.toString()))) {
-                Files.createDirectory(Paths.get(tempLoc.toString()));
-            }
-            Path tempPathAndFileName = Paths.get(tempLoc.toString(), ocflRepoFileName);
-            mFile.transferTo(tempPathAndFileName);
-            if (storageType.equals(StorageServiceType.FILE_SYSTEM)) {
-                ocflRepository.putObject(ObjectVersionId.head(fileId), tempPathAndFileName,
-                        new VersionInfo().setMessage("Pass-Core File Service: Initial commit"));
-                String fileRepoRelPath = ocflRepository.describeVersion(ObjectVersionId.head(fileId))
-                        .getFileMap().entrySet().iterator().next().getValue().getStorageRelativePath();
-                LOG.info("File Service: File with ID " + fileId + " was stored in the file system repo at the " +
-                        "location:" + Paths.get(this.ocflLoc.toString(),fileRepoRelPath));
-
-            } else if (storageType.equals(StorageServiceType.S3)) {
-                ocflRepository.putObject(ObjectVersionId.head(fileId), tempPathAndFileName,
-                        new VersionInfo().setMessage("Pass-Core File Service: Initial commit"));
-                String fileRepoRelPath = ocflRepository.describeVersion(ObjectVersionId.head(fileId))
-                        .getFileMap().entrySet().iterator().next().getValue().getStorageRelativePath();
-                LOG.info("File Service: File with ID " + fileId + " was stored in the S3 repo at location: " +
-                        Paths.get(this.repoPrefix,this.bucketName,fileRepoRelPath));
+            long storedSize = size;
+            String knownContentType = contentType;
+            boolean compress = isCompressible(contentType, size);
+            if (dedupIndex == null && !compress) {
+                //the upload is streamed into storage, so the content is neither staged in the temp directory
+                //nor loaded into memory
+                storageBackend.write(fileId, ocflRepoFileName, contentType, content);
+            } else {
+                //the content is staged in the OCFL work directory, compressed and digested as it is written
+                Path stagedFile = Files.createTempFile(workLoc, "staged-", ".tmp");
+                try {
+                    CountingInputStream countingContent = new CountingInputStream(content);
+                    String digest = stageContent(countingContent, stagedFile, compress);
+                    storedSize = Files.size(stagedFile);
+                    ContentEncoding contentEncoding = compress
+                            ? new ContentEncoding(ContentEncoding.GZIP, countingContent.getByteCount()) : null;
+                    String existingObjectId = dedupIndex == null ? null : dedupIndex.addReference(digest, fileId);
+                    if (existingObjectId != null) {
+                        LOG.info("File Service: File with ID " + fileId + " has the same content as " +
+                                existingObjectId + ", the stored content is reused");
+                        //reused content keeps the mime type it was stored with
+                        knownContentType = null;
+                    } else {
+                        storageBackend.move(fileId, ocflRepoFileName, contentType, contentEncoding, stagedFile,
+                                digest);
+                        if (dedupIndex != null) {
+                            dedupIndex.register(digest, fileId);
+                        }
+                    }
+                } finally {
+                    Files.deleteIfExists(stagedFile);
+                }
             }
+            //the metadata of the new file is cached, so the first download does not read the inventory again
+            FileMetadata fileMetadata = loadFileMetadata(fileId, storedSize, knownContentType);
+            fileMetadataCache.put(fileId, fileMetadata);
+            LOG.info("File Service: File with ID " + fileId + " was stored in the " + storageType.label +
+                    " repo at location: " + fileMetadata.getStorageRelativePath());
 
             storageFile = new StorageFile(
                     fileId,
                     fileUuid,
                     origFileNameExt,
-                    mimeType,
+                    fileMetadata.getContentType(),
                     storageType.label,
-                    mFile.getSize(),
+                    size,
                     fileExt
             );
 
-        } catch (IOException e) {
+        } catch (IOException | OcflIOException e) {
             LOG.error(e.toString());
             throw new IOException("File Service: The file system was unable to store the uploaded file", e);
         }
@@ -306,51 +594,495 @@ public class FileStorageService {
     }
 
     /**
-     * Gets the file (bytes) of the supplied fileId.
+     * Stages the content of a stream in a file while its SHA-512 digest is computed. When deduplication is enabled
+     * the digest identifies content that is already stored, in which case the fileId references the existing OCFL
+     * object and the staged content is discarded. The digest is computed of the staged content, after it is
+     * compressed, since that is the content that is stored.
+     *
+     * @param content The content of the file. The stream is consumed but not closed.
+     * @param stagedFile The file the content is staged in.
+     * @param compress True if the content is compressed with gzip as it is staged.
+     * @return The hex encoded SHA-512 digest of the staged content
+     * @throws IOException If the content cannot be staged an IOException will be thrown.
+     */
+    private static String stageContent(InputStream content, Path stagedFile, boolean compress) throws IOException {
+        MessageDigest sha512;
+        try {
+            sha512 = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("File Service: SHA-512 is not supported", e);
+        }
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(stagedFile), sha512)) {
+            if (compress) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+                content.transferTo(gzipOut);
+                gzipOut.finish();
+            } else {
+                content.transferTo(out);
+            }
+        }
+        return toHex(sha512.digest());
+    }
+
+    /**
+     * Determines whether an uploaded file is compressed as it is stored, by its mime type and size.
+     *
+     * @param contentType The detected mime type of the file.
+     * @param size The size of the file in bytes.
+     * @return True if the file is compressed
+     */
+    private boolean isCompressible(String contentType, long size) {
+        if (compressionContentTypes == null
+                || size < storageProperties.getCompressionMinSize().toBytes()) {
+            return false;
+        }
+        MimeType mimeType;
+        try {
+            mimeType = MimeTypeUtils.parseMimeType(contentType);
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+        return compressionContentTypes.stream().anyMatch(compressionType -> compressionType.includes(mimeType));
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets a stream of the bytes of the supplied fileId. The content is not staged in the temp directory or loaded
+     * onto the heap; it is read directly from the OCFL repository (or the local cache of S3 files) as the stream is
+     * consumed, so concurrent requests do not share any temporary files and use a constant amount of memory.
+     * Content that was compressed when it was stored is decompressed as the stream is consumed.
+     * The caller is responsible for closing the stream.
      *
      * @param fileId The fileId of the file to be returned.
-     * @return Returns a file as a ByteArrayResource
-     * @throws IOException If a file does not exist or the appropriate read/write permissions are not correct an
-     * IOException will be thrown.
-     */
-    public ByteArrayResource getFile(String fileId) throws IOException {
-        ByteArrayResource loadedResource;
-        Path tempLoadDir = Paths.get(this.tempLoc.toString(), fileId,
-                Instant.now().toString().replace(":","-").replace(".","-"));
-        Path tempLoadParentDir = Paths.get(this.tempLoc.toString(), fileId);
+     * @return Returns an InputStream of the file content
+     * @throws IOException If a file does not exist or cannot be read an IOException will be thrown.
+     */
+    public InputStream getFileStream(String fileId) throws IOException {
+        //look up the encoding first, so a failed lookup does not leak an open stream
+        boolean encoded = getFileContentEncoding(fileId).isPresent();
+        InputStream encodedStream = getEncodedFileStream(fileId);
+        if (!encoded) {
+            return encodedStream;
+        }
         try {
-            //need the parent directory for the OCFL getObject to work
-            if (!Files.exists(tempLoadParentDir)) {
-                Files.createDirectories(tempLoadParentDir);
+            return new GZIPInputStream(encodedStream, GZIP_BUFFER_SIZE);
+        } catch (IOException e) {
+            encodedStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets a stream of the bytes of the supplied fileId from an offset on. Content that is stored as uploaded is read
+     * from storage starting at the offset, on S3 with a ranged GetObject request, so the bytes before the offset are
+     * not transferred. Content that was compressed when it was stored cannot be read from an offset, it falls back to
+     * a full read that is decoded from the start and skips the bytes before the offset. The caller is responsible for
+     * closing the stream.
+     *
+     * @param fileId The fileId of the file to be returned.
+     * @param offset The offset of the first byte of the stream, less than the size of the file.
+     * @return Returns an InputStream of the file content from the offset to the end
+     * @throws IOException If a file does not exist or cannot be read an IOException will be thrown.
+     */
+    InputStream getFileStream(String fileId, long offset) throws IOException {
+        if (offset == 0 || getFileContentEncoding(fileId).isPresent()) {
+            InputStream fileStream = getFileStream(fileId);
+            try {
+                IOUtils.skipFully(fileStream, offset);
+            } catch (IOException e) {
+                fileStream.close();
+                throw e;
             }
-            // the output path for getObject must not exist, hence temp dir is created on the fly
-            ocflRepository.getObject(ObjectVersionId.head(fileId), tempLoadDir);
-            LOG.info("File Service: File with ID " + fileId + " was loaded from the repo");
-            Path fileNamePath = tempLoadDir.toFile().listFiles()[0].toPath();
-            loadedResource = new ByteArrayResource(Files.readAllBytes(fileNamePath));
+            return fileStream;
+        }
+        try {
+            return storageBackend.openStream(getFileMetadata(fileId).getStorageRelativePath(), offset);
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets a stream of the bytes of the supplied fileId as they are stored, without decoding content that was
+     * compressed when it was stored. The caller is responsible for closing the stream.
+     *
+     * @param fileId The fileId of the file to be returned.
+     * @return Returns an InputStream of the stored content, encoded with the content encoding of the file
+     * @throws IOException If a file does not exist or cannot be read an IOException will be thrown.
+     * @see #getFileContentEncoding(String)
+     */
+    public InputStream getEncodedFileStream(String fileId) throws IOException {
+        Optional<Path> cachedFile = getCachedFile(fileId);
+        if (cachedFile.isPresent()) {
+            try {
+                return Files.newInputStream(cachedFile.get());
+            } catch (NoSuchFileException e) {
+                LOG.debug("File Service: Cached file of file ID " + fileId + " was evicted before it was opened");
+            }
+        }
+        return getRepositoryStream(fileId);
+    }
+
+    /**
+     * Gets the encoding of the stored content of the supplied fileId, when it was compressed as it was stored.
+     *
+     * @param fileId The fileId of the file.
+     * @return The HTTP content coding of the stored content, e.g. gzip, or empty if the content is stored as uploaded
+     * @throws IOException If a file does not exist an IOException will be thrown.
+     */
+    public Optional<String> getFileContentEncoding(String fileId) throws IOException {
+        try {
+            return Optional.ofNullable(getFileMetadata(fileId).getContentEncoding()).map(ContentEncoding::getName);
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-        } catch (NotFoundException e) {
+    private InputStream getRepositoryStream(String fileId) throws IOException {
+        try {
+            //the content file is read directly from storage, its location is known from the cached metadata
+            String fileRepoRelPath = getFileMetadata(fileId).getStorageRelativePath();
+            LOG.info("File Service: File with ID " + fileId + " is being streamed from the repo");
+            return storageBackend.openStream(fileRepoRelPath);
+        } catch (NotFoundException | KeyNotFoundException e) {
             throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        if (loadedResource.exists() && loadedResource.isReadable()) {
-            //clean up temp directory
-            if (!FileSystemUtils.deleteRecursively(Paths.get(this.tempLoc.toString()))) {
-                LOG.info("File Service: No files to cleanup on file get");
+    /**
+     * Writes a zip archive of the supplied files to the output stream. The files are read from the repository one
+     * after another and streamed into the archive, so no temporary files are written and only one buffer of content
+     * is held in memory, regardless of the size of the archive. The output stream is not closed.
+     *
+     * @param entries The files of the archive, mapping the name of each entry in the archive to its fileId. The
+     *                entries are written in the iteration order of the map.
+     * @param out The output stream the archive is written to.
+     * @throws IOException If a file does not exist or cannot be read, or the archive cannot be written an IOException
+     * will be thrown.
+     */
+    public void writeZipArchive(Map<String, String> entries, OutputStream out) throws IOException {
+        ZipOutputStream zipStream = new ZipOutputStream(out);
+        //files are mostly already compressed formats (e.g. PDF), so favor throughput over archive size
+        zipStream.setLevel(Deflater.BEST_SPEED);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String fileId = entry.getValue();
+            ZipEntry zipEntry = new ZipEntry(entry.getKey());
+            zipEntry.setLastModifiedTime(FileTime.from(getFileLastModified(fileId)));
+            zipStream.putNextEntry(zipEntry);
+            try (InputStream fileStream = getFileStream(fileId)) {
+                fileStream.transferTo(zipStream);
             }
-            return loadedResource;
-        } else {
-            throw new IOException("File Service: Unable to return the file. Verify read/write " +
-                    "permissions of the temp directory.");
+            zipStream.closeEntry();
+        }
+        zipStream.finish();
+        zipStream.flush();
+    }
+
+    /**
+     * Gets the size in bytes of the most recent version of the supplied fileId. The size is read from the storage
+     * (file system or S3 HEAD request) without reading the content of the file, and then cached with the metadata.
+     * The size of compressed content is the size of the file as it was uploaded.
+     *
+     * @param fileId The fileId of the file.
+     * @return The size of the file in bytes
+     * @throws IOException If a file does not exist or its size cannot be determined an IOException will be thrown.
+     */
+    public long getFileSize(String fileId) throws IOException {
+        try {
+            return getFileMetadata(fileId).getSize();
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets the size of the stored content of the most recent version of the supplied fileId, which is the size of
+     * the compressed content if it was compressed when it was stored.
+     *
+     * @param fileId The fileId of the file.
+     * @return The size of the stored content in bytes
+     * @throws IOException If a file does not exist or its size cannot be determined an IOException will be thrown.
+     * @see #getFileContentEncoding(String)
+     */
+    public long getEncodedFileSize(String fileId) throws IOException {
+        try {
+            return getFileMetadata(fileId).getStoredSize();
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets the absolute path of the content of the most recent version of the supplied fileId on local disk. When the
+     * storage type is FILE_SYSTEM or PLAIN_FILE_SYSTEM this is the content file in storage. When the storage type is
+     * S3 and the local cache is enabled this is the cached file, which is fetched from S3 if it is not cached yet.
+     * Either way the file can be served directly without staging a copy in the temp directory. The returned path must
+     * only be read, never modified. Content that was compressed when it was stored is never returned, since the file
+     * on disk is not the content of the file. A cached file may be evicted before it is opened, so callers must handle
+     * a NoSuchFileException by reading the content with getFileStream instead.
+     *
+     * @param fileId The fileId of the file.
+     * @return The absolute path of the content, or empty if the content is not available on local disk
+     * @throws IOException If a file does not exist an IOException will be thrown.
+     */
+    public Optional<Path> getFileSystemPath(String fileId) throws IOException {
+        if (getFileContentEncoding(fileId).isPresent()) {
+            return Optional.empty();
+        }
+        return getEncodedFileSystemPath(fileId);
+    }
+
+    private Optional<Path> getEncodedFileSystemPath(String fileId) throws IOException {
+        try {
+            Optional<Path> localPath = storageBackend.getLocalPath(getResourceFileRelativePath(fileId));
+            return localPath.isPresent() ? localPath : getCachedFile(fileId);
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets a Resource of the most recent version of the supplied fileId. The Resource knows its content length and
+     * opens a new stream on every read, so it can be used to serve byte ranges of the file. When the content is
+     * available on local disk the Resource is that file, otherwise the content is streamed from the repository, and a
+     * byte range of content that is stored as uploaded is read from the start of the range, e.g. with a ranged
+     * GetObject request on S3. Content that was compressed when it was stored falls back to a full read.
+     *
+     * @param fileId The fileId of the file to be returned.
+     * @return Returns a readable Resource of the file
+     * @throws IOException If a file does not exist or its size cannot be determined an IOException will be thrown.
+     */
+    public Resource getFileResource(String fileId) throws IOException {
+        Resource streamResource = new OcflStreamResource(this, fileId, getFileSize(fileId), false);
+        Optional<Path> filePath = getFileSystemPath(fileId);
+        if (filePath.isPresent()) {
+            return new LocalFileResource(filePath.get(), streamResource);
+        }
+        return streamResource;
+    }
+
+    /**
+     * Gets a Resource of the stored content of the most recent version of the supplied fileId, without decoding
+     * content that was compressed when it was stored. It is used to pass compressed content through to clients that
+     * accept its content encoding.
+     *
+     * @param fileId The fileId of the file to be returned.
+     * @return Returns a readable Resource of the stored content
+     * @throws IOException If a file does not exist or its size cannot be determined an IOException will be thrown.
+     * @see #getFileContentEncoding(String)
+     */
+    public Resource getEncodedFileResource(String fileId) throws IOException {
+        Resource streamResource = new OcflStreamResource(this, fileId, getEncodedFileSize(fileId), true);
+        Optional<Path> filePath = getEncodedFileSystemPath(fileId);
+        if (filePath.isPresent()) {
+            return new LocalFileResource(filePath.get(), streamResource);
         }
+        return streamResource;
+    }
+
+    /**
+     * Gets the SHA-512 digest of the most recent version of the supplied fileId as recorded in the OCFL inventory.
+     * The digest identifies the content of the file and can be used as an entity tag.
+     *
+     * @param fileId The fileId of the file.
+     * @return The hex encoded SHA-512 digest of the file
+     */
+    public String getFileDigest(String fileId) {
+        return getFileMetadata(fileId).getDigest();
     }
 
     /**
-     * Deletes a file in storage or repository that is defined in the configuration
+     * Gets the time the most recent version of the supplied fileId was created in the OCFL repository.
+     *
+     * @param fileId The fileId of the file.
+     * @return The time the file was last modified
+     */
+    public Instant getFileLastModified(String fileId) {
+        return getFileMetadata(fileId).getLastModified();
+    }
+
+    /**
+     * Deletes a file in storage or repository that is defined in the configuration. The file is no longer found as
+     * soon as this method returns, but its content is purged from the repository in the background by the purge
+     * queue, which retries failed purges and resumes queued purges after a restart. Deleting a fileId whose object
+     * does not exist queues no purge, deleting a fileId whose purge failed queues it again.
      * @param fileId The fileId of the file to be deleted
      */
     public void deleteFile(String fileId) {
-        ocflRepository.purgeObject(fileId);
+        if (s3FileCache != null) {
+            try {
+                s3FileCache.remove(getCacheKey(fileId));
+            } catch (NotFoundException | KeyNotFoundException e) {
+                LOG.debug("File Service: No cached file to remove for file ID " + fileId);
+            }
+        }
+        try {
+            //the existence of the object is checked before the lock is taken, on S3 it is a request that must not
+            //block the metadata lookups of other requests
+            String objectId = dedupIndex == null ? fileId : dedupIndex.getObjectId(fileId);
+            boolean exists = objectId != null && !purgeQueue.isPending(objectId) && storageBackend.contains(objectId);
+            synchronized (fileMetadataCache) {
+                //with deduplication, the content is only purged when no other fileId references it
+                String unreferencedObjectId = dedupIndex == null ? fileId : dedupIndex.removeReference(fileId);
+                if (exists && unreferencedObjectId != null) {
+                    purgeQueue.enqueue(unreferencedObjectId);
+                }
+                fileMetadataCache.remove(fileId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of deleted files whose content is waiting to be purged from the repository.
+     *
+     * @return The number of pending purges
+     */
+    public int getPendingPurgeCount() {
+        return purgeQueue.getPendingCount();
+    }
+
+    /**
+     * Gets the number of deleted files whose content could not be purged from the repository on any attempt. Their
+     * purges are no longer retried until they are moved back into the purge queue.
+     *
+     * @return The number of failed purges
+     */
+    public int getFailedPurgeCount() {
+        return purgeQueue.getFailedCount();
+    }
+
+    /**
+     * Gets a lazy stream of the ids of all objects in the repository, except objects of deleted files that are
+     * waiting to be purged. The stream must be closed.
+     *
+     * @return The ids of the objects
+     */
+    Stream<String> listObjectIds() {
+        return storageBackend.listObjectIds().filter(objectId -> !purgeQueue.isDeleted(objectId));
+    }
+
+    /**
+     * Verifies the fixity of an object. The content files of every version of the object are read from storage and
+     * their SHA-512 digests are recomputed and compared with the digests recorded by the storage backend. The content
+     * is streamed and never cached, so the check does not displace files of the local cache of S3 files.
+     *
+     * @param objectId The id of the object.
+     * @param readListener Notified with the number of bytes of every read, e.g. to throttle the check.
+     * @return The number of bytes that were verified
+     * @throws FixityCheckException If the content of a file does not match its digest.
+     * @throws NotFoundException If the object was deleted before or during the check.
+     * @throws IOException If the content of a file is missing or cannot be read an IOException will be thrown.
+     */
+    long checkObjectFixity(String objectId, IntConsumer readListener) throws IOException {
+        long verifiedBytes = 0;
+        byte[] buffer = new byte[FIXITY_BUFFER_SIZE];
+        try {
+            for (Map.Entry<String, String> expectedDigest : storageBackend.getContentDigests(objectId).entrySet()) {
+                InputStream contentStream = storageBackend.openStream(expectedDigest.getKey());
+                try (FixityCheckInputStream fixityStream = new FixityCheckInputStream(contentStream,
+                        DigestAlgorithm.sha512, expectedDigest.getValue())) {
+                    int read;
+                    while ((read = fixityStream.read(buffer)) != -1) {
+                        verifiedBytes += read;
+                        readListener.accept(read);
+                    }
+                    fixityStream.checkFixity();
+                }
+            }
+        } catch (IOException | KeyNotFoundException e) {
+            //content that disappears while its object is purged is not a fixity failure
+            if (purgeQueue.isDeleted(objectId) || !storageBackend.contains(objectId)) {
+                throw new NotFoundException("File Service: The object " + objectId + " was deleted during the check");
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("File Service: The content of the object " + objectId + " is missing: " + e);
+        }
+        return verifiedBytes;
+    }
+
+    /**
+     * Gets the id of the OCFL object that holds the content of the supplied fileId. Without deduplication, and for
+     * files that were stored before deduplication was enabled, this is the fileId itself.
+     *
+     * @param fileId The fileId of the file.
+     * @return The id of the OCFL object
+     * @throws NotFoundException If the file was deleted.
+     */
+    private String getObjectId(String fileId) {
+        String objectId = fileId;
+        if (dedupIndex != null) {
+            try {
+                objectId = dedupIndex.getObjectId(fileId);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (objectId == null || purgeQueue.isDeleted(objectId)) {
+            throw new NotFoundException("File Service: The file with ID " + fileId + " was not found, it was deleted");
+        }
+        return objectId;
+    }
+
+    /**
+     * Gets the cached file of the most recent version of the supplied fileId when the local cache of S3 files is
+     * enabled. On a cache miss the content is fetched from the repository into the cache. Content larger than the
+     * capacity of the cache is not cached.
+     *
+     * @param fileId The fileId of the file.
+     * @return The path of the cached file, or empty if the cache is not enabled or the content is not cached
+     * @throws IOException If a file does not exist or cannot be cached an IOException will be thrown.
+     */
+    private Optional<Path> getCachedFile(String fileId) throws IOException {
+        if (s3FileCache == null) {
+            return Optional.empty();
+        }
+        String cacheKey;
+        try {
+            //content larger than the cache would displace all other entries, it is streamed from the repository
+            if (!s3FileCache.fits(getFileMetadata(fileId).getStoredSize())) {
+                return Optional.empty();
+            }
+            cacheKey = getCacheKey(fileId);
+        } catch (NotFoundException | KeyNotFoundException e) {
+            throw new IOException("File Service: The file could not be loaded, file ID: " + fileId + " " + e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Optional<Path> cachedFile = s3FileCache.get(cacheKey);
+        if (cachedFile.isPresent()) {
+            LOG.debug("File Service: File with ID " + fileId + " was loaded from the local cache");
+            return cachedFile;
+        }
+        try (InputStream repositoryStream = getRepositoryStream(fileId)) {
+            return Optional.of(s3FileCache.put(cacheKey, repositoryStream));
+        }
+    }
+
+    private String getCacheKey(String fileId) {
+        return fileId + "@" + getFileDigest(fileId);
     }
 
     /**
@@ -360,25 +1092,95 @@ public class FileStorageService {
      * @return The relative path of the file.
      */
     public String getResourceFileRelativePath(String fileId) {
-        VersionDetails versionDetails = ocflRepository.describeVersion(ObjectVersionId.head(fileId));
-        Collection<FileDetails> allVersionFiles = versionDetails.getFiles();
-        Optional<FileDetails> fileDetails = allVersionFiles.stream().findFirst();
-        return fileDetails.get().getStorageRelativePath();
+        return getFileMetadata(fileId).getStorageRelativePath();
     }
 
+    /**
+     * Gets the mime type of the supplied fileId. The mime type was detected when the file was stored, so it is read
+     * from the metadata cache without any I/O on a cache hit.
+     * @param fileId The fileId of the file.
+     * @return The mime type of the file, application/octet-stream if it is not known
+     */
     public String getFileContentType(String fileId) {
-        VersionDetails versionDetails = ocflRepository.describeVersion(ObjectVersionId.head(fileId));
-        FileDetails fileDetails = versionDetails.getFiles().stream().findFirst().get();
-        Path fileDetailPath = Paths.get(fileDetails.getPath());
-        File file = fileDetailPath.toFile();
-        //get the content type from the file
-        try {
-            String contentType = Files.probeContentType(file.toPath());
-            return contentType;
-        } catch (IOException e) {
-            LOG.info("File Service: Unable to determine the content type of the file with ID: " + fileId);
-            return "UNKNOWN_FILE_TYPE";
+        return getFileMetadata(fileId).getContentType();
+    }
+
+    /**
+     * Gets a short-lived pre-signed URL that downloads the supplied fileId directly from the S3 bucket, so the
+     * content does not flow through the File Service. The URL is only available when the storage type is S3,
+     * pre-signed downloads are enabled, and the file is at least the configured minimum size. The response of S3
+     * carries the mime type of the file and the supplied Content-Disposition, and the content encoding of content
+     * that was compressed when it was stored, which is not decoded by S3.
+     *
+     * @param fileId The fileId of the file.
+     * @param contentDisposition The Content-Disposition header of the response of S3.
+     * @return The pre-signed URL of the content of the file, or empty if the file is downloaded through the File
+     * Service
+     */
+    public Optional<URL> getPresignedDownloadUrl(String fileId, String contentDisposition) {
+        if (s3Presigner == null) {
+            return Optional.empty();
         }
+        FileMetadata fileMetadata = getFileMetadata(fileId);
+        if (fileMetadata.getSize() < storageProperties.getS3PresignedDownloadMinSize().toBytes()) {
+            return Optional.empty();
+        }
+        //the storage relative path is relative to the repo prefix, like every key of the OCFL S3 client
+        String prefix = ocflS3Client.prefix();
+        String key = prefix == null || prefix.isEmpty() ? fileMetadata.getStorageRelativePath()
+                : prefix + "/" + fileMetadata.getStorageRelativePath();
+        GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .responseContentType(fileMetadata.getContentType())
+                .responseContentDisposition(contentDisposition);
+        if (fileMetadata.getContentEncoding() != null) {
+            getObjectRequest.responseContentEncoding(fileMetadata.getContentEncoding().getName());
+        }
+        return Optional.of(s3Presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(storageProperties.getS3PresignedDownloadExpiration())
+                .getObjectRequest(getObjectRequest.build())
+                .build()).url());
+    }
+
+    /**
+     * Gets the metadata of the most recent version of the supplied fileId from the metadata cache. On a cache miss
+     * the metadata is read from the storage backend, and then cached.
+     *
+     * @param fileId The fileId of the file.
+     * @return The metadata of the file
+     */
+    private FileMetadata getFileMetadata(String fileId) {
+        FileMetadata fileMetadata = fileMetadataCache.get(fileId);
+        if (fileMetadata == null) {
+            try {
+                fileMetadata = loadFileMetadata(fileId, null, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            //the file may have been deleted while its metadata was loaded, deleted files must not be cached
+            synchronized (fileMetadataCache) {
+                getObjectId(fileId);
+                fileMetadataCache.put(fileId, fileMetadata);
+            }
+        }
+        return fileMetadata;
+    }
+
+    /**
+     * Reads the metadata of the most recent version of the supplied fileId from the storage backend.
+     *
+     * @param fileId The fileId of the file.
+     * @param knownSize The size of the content in bytes if it is already known, otherwise null and the size is read
+     *                  from the storage.
+     * @param knownContentType The mime type of the content if it is already known, otherwise null and the mime type
+     *                         is read from the storage.
+     * @return The metadata of the file
+     * @throws IOException If the size of the file cannot be determined an IOException will be thrown.
+     */
+    private FileMetadata loadFileMetadata(String fileId, Long knownSize, String knownContentType)
+            throws IOException {
+        return storageBackend.describe(getObjectId(fileId), knownSize, knownContentType);
     }
 }
 
@@ -0,0 +1,295 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+
+import edu.wisc.library.ocfl.api.exception.FixityCheckException;
+import edu.wisc.library.ocfl.api.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+/**
+ * The FixityCheckService verifies the integrity of the stored content. A fixity check walks every object in the
+ * repository, re-reads the content files of the object from storage and compares their SHA-512 digests with the digests
+ * recorded when they were stored, e.g. in the OCFL inventory. Objects are checked in parallel on a bounded pool of low
+ * priority threads; the number of threads is the fixity check concurrency in the StorageProperties, at most the number
+ * of cores. The reads of all threads share a budget of bytes per second, so a check of millions of objects does not
+ * saturate the disk or the connection to S3 for the requests of users.
+ *
+ * When enabled in the StorageProperties, a fixity check runs periodically in the background. A check can also be
+ * started on demand. The progress of the current or most recent check, and the objects that failed it, are available
+ * from getStatus.
+ *
+ * @author Tim Sanders
+ * @see FixityCheckStatus
+ * @see FileStorageService
+ */
+@Service
+public class FixityCheckService {
+    private static final Logger LOG = LoggerFactory.getLogger(FixityCheckService.class);
+    private static final int MAX_REPORTED_FAILURES = 1000;
+
+    private final FileStorageService fileStorageService;
+    private final int concurrency;
+    private final long maxBytesPerSecond;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong objectsChecked = new AtomicLong();
+    private final AtomicLong objectsFailed = new AtomicLong();
+    private final AtomicLong bytesChecked = new AtomicLong();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+    private final Object throttleLock = new Object();
+    private long nextReadNanos;
+    private volatile Instant startTime;
+    private volatile Instant endTime;
+
+    /**
+     * FixityCheckService Class constructor. The service is created at startup so that the periodic check is
+     * scheduled, but the FileStorageService is injected lazily and only initialized when the first check runs.
+     *
+     * @param fileStorageService The FileStorageService of the repository that is checked.
+     * @param storageConfiguration A set of configuration properties of the File Service.
+     */
+    @Autowired
+    public FixityCheckService(@Lazy FileStorageService fileStorageService,
+                              StorageConfiguration storageConfiguration) {
+        this.fileStorageService = fileStorageService;
+        StorageProperties storageProperties = storageConfiguration.getStorageProperties();
+        this.concurrency = Math.max(1, Math.min(storageProperties.getFixityCheckConcurrency(),
+                Runtime.getRuntime().availableProcessors()));
+        this.maxBytesPerSecond = storageProperties.getFixityCheckMaxRate().toBytes();
+        this.nextReadNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-service-fixity-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (storageProperties.isFixityCheckEnabled()) {
+            Duration interval = storageProperties.getFixityCheckInterval();
+            scheduler.scheduleWithFixedDelay(this::runScheduledFixityCheck, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            LOG.info("File Service: A fixity check of the repository is scheduled every " + interval);
+        }
+    }
+
+    /**
+     * Stops the periodic fixity check and interrupts a check that is running.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Starts a fixity check of the repository in the background, unless a check is already running.
+     *
+     * @return True if a check was started, false if a check is already running
+     */
+    public boolean startFixityCheck() {
+        if (!tryStart()) {
+            return false;
+        }
+        try {
+            scheduler.execute(this::checkRepository);
+        } catch (RuntimeException e) {
+            finish();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Runs a fixity check of the repository and waits for it to complete.
+     *
+     * @return The status of the completed check
+     * @throws IllegalStateException If a check is already running.
+     */
+    public FixityCheckStatus runFixityCheck() {
+        if (!tryStart()) {
+            throw new IllegalStateException("File Service: A fixity check is already running");
+        }
+        checkRepository();
+        return getStatus();
+    }
+
+    /**
+     * Gets the progress of the current fixity check, or the result of the most recent check if none is running.
+     *
+     * @return The status of the fixity check
+     */
+    public FixityCheckStatus getStatus() {
+        FixityCheckStatus status = new FixityCheckStatus();
+        status.setRunning(running.get());
+        status.setStartTime(startTime == null ? null : startTime.toString());
+        status.setEndTime(endTime == null ? null : endTime.toString());
+        status.setObjectsChecked(objectsChecked.get());
+        status.setObjectsFailed(objectsFailed.get());
+        status.setBytesChecked(bytesChecked.get());
+        synchronized (failures) {
+            status.setFailures(new LinkedHashMap<>(failures));
+        }
+        return status;
+    }
+
+    private void runScheduledFixityCheck() {
+        //the check runs on the scheduler thread, so the interval is counted from the end of the check
+        if (tryStart()) {
+            checkRepository();
+        }
+    }
+
+    private boolean tryStart() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        objectsChecked.set(0);
+        objectsFailed.set(0);
+        bytesChecked.set(0);
+        synchronized (failures) {
+            failures.clear();
+        }
+        startTime = Instant.now();
+        endTime = null;
+        return true;
+    }
+
+    private void finish() {
+        endTime = Instant.now();
+        running.set(false);
+    }
+
+    /**
+     * Checks every object of the repository. The ids of the objects are streamed from the repository and at most
+     * twice as many objects as there are threads are queued at any time, so the memory of a check does not grow with
+     * the size of the repository.
+     */
+    private void checkRepository() {
+        LOG.info("File Service: Fixity check of the repository started");
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService checkExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "file-service-fixity-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            //the requests of users take precedence over the check
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        int maxQueued = concurrency * 2;
+        Semaphore queued = new Semaphore(maxQueued);
+        try (Stream<String> objectIds = fileStorageService.listObjectIds()) {
+            Iterator<String> objectIdIterator = objectIds.iterator();
+            while (objectIdIterator.hasNext()) {
+                String objectId = objectIdIterator.next();
+                queued.acquire();
+                checkExecutor.execute(() -> {
+                    try {
+                        checkObject(objectId);
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+            //wait for the queued objects to be checked
+            queued.acquire(maxQueued);
+            LOG.info("File Service: Fixity check of the repository completed, " + objectsChecked.get() +
+                    " objects checked, " + objectsFailed.get() + " failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("File Service: Fixity check of the repository was interrupted");
+        } catch (RuntimeException e) {
+            LOG.error("File Service: Fixity check of the repository failed: " + e);
+        } finally {
+            checkExecutor.shutdownNow();
+            finish();
+        }
+    }
+
+    private void checkObject(String objectId) {
+        try {
+            bytesChecked.addAndGet(fileStorageService.checkObjectFixity(objectId, this::throttle));
+            objectsChecked.incrementAndGet();
+        } catch (NotFoundException e) {
+            LOG.debug("File Service: Skipping fixity check of deleted object " + objectId);
+        } catch (FixityCheckException e) {
+            fail(objectId, e.getMessage());
+        } catch (IOException | UncheckedIOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            fail(objectId, e.toString());
+        } catch (RuntimeException e) {
+            fail(objectId, e.toString());
+        }
+    }
+
+    private void fail(String objectId, String reason) {
+        LOG.error("File Service: Fixity check failed for object " + objectId + ": " + reason);
+        objectsChecked.incrementAndGet();
+        objectsFailed.incrementAndGet();
+        synchronized (failures) {
+            if (failures.size() < MAX_REPORTED_FAILURES) {
+                failures.put(objectId, reason);
+            }
+        }
+    }
+
+    /**
+     * Delays a read of the check until it fits in the budget of bytes per second shared by all threads of the check.
+     *
+     * @param bytes The number of bytes that were read.
+     */
+    private void throttle(int bytes) {
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (throttleLock) {
+            long now = System.nanoTime();
+            long readStart = nextReadNanos - now > 0 ? nextReadNanos : now;
+            nextReadNanos = readStart + TimeUnit.SECONDS.toNanos(bytes) / maxBytesPerSecond;
+            waitNanos = readStart - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("File Service: Fixity check interrupted"));
+            }
+        }
+    }
+}
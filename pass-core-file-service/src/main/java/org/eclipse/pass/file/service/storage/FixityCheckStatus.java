@@ -0,0 +1,198 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A FixityCheckStatus is a snapshot of the progress of the current or most recent fixity check of the repository.
+ * The times are ISO-8601 instants. The failures map the id of each OCFL object that failed the check to the reason;
+ * only the first failures of a check are reported, while objectsFailed counts all of them.
+ *
+ * @author Tim Sanders
+ * @see FixityCheckService
+ */
+public class FixityCheckStatus {
+    private Boolean running;
+    private String startTime;
+    private String endTime;
+    private Long objectsChecked;
+    private Long objectsFailed;
+    private Long bytesChecked;
+    private Map<String, String> failures;
+
+    /**
+     * Default Constructor which initializes the FixityCheckStatus with default value for member variables
+     */
+    public FixityCheckStatus() {
+        this.running = false;
+        this.objectsChecked = 0L;
+        this.objectsFailed = 0L;
+        this.bytesChecked = 0L;
+        this.failures = new LinkedHashMap<>();
+    }
+
+    /**
+     * Get running, whether a fixity check is in progress
+     * @return running of the FixityCheckStatus
+     **/
+    public Boolean getRunning() {
+        return running;
+    }
+
+    /**
+     * Set running
+     * @param running of the FixityCheckStatus
+     **/
+    public void setRunning(Boolean running) {
+        this.running = running;
+    }
+
+    /**
+     * Get startTime, the time the check started, or null if no check has run
+     * @return startTime of the FixityCheckStatus
+     **/
+    public String getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Set startTime
+     * @param startTime of the FixityCheckStatus
+     **/
+    public void setStartTime(String startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Get endTime, the time the check finished, or null if it is running
+     * @return endTime of the FixityCheckStatus
+     **/
+    public String getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Set endTime
+     * @param endTime of the FixityCheckStatus
+     **/
+    public void setEndTime(String endTime) {
+        this.endTime = endTime;
+    }
+
+    /**
+     * Get objectsChecked, the number of OCFL objects checked so far
+     * @return objectsChecked of the FixityCheckStatus
+     **/
+    public Long getObjectsChecked() {
+        return objectsChecked;
+    }
+
+    /**
+     * Set objectsChecked
+     * @param objectsChecked of the FixityCheckStatus
+     **/
+    public void setObjectsChecked(Long objectsChecked) {
+        this.objectsChecked = objectsChecked;
+    }
+
+    /**
+     * Get objectsFailed, the number of OCFL objects that failed the check
+     * @return objectsFailed of the FixityCheckStatus
+     **/
+    public Long getObjectsFailed() {
+        return objectsFailed;
+    }
+
+    /**
+     * Set objectsFailed
+     * @param objectsFailed of the FixityCheckStatus
+     **/
+    public void setObjectsFailed(Long objectsFailed) {
+        this.objectsFailed = objectsFailed;
+    }
+
+    /**
+     * Get bytesChecked, the number of bytes of content verified so far
+     * @return bytesChecked of the FixityCheckStatus
+     **/
+    public Long getBytesChecked() {
+        return bytesChecked;
+    }
+
+    /**
+     * Set bytesChecked
+     * @param bytesChecked of the FixityCheckStatus
+     **/
+    public void setBytesChecked(Long bytesChecked) {
+        this.bytesChecked = bytesChecked;
+    }
+
+    /**
+     * Get failures, the reason of each failed OCFL object by its id
+     * @return failures of the FixityCheckStatus
+     **/
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Set failures
+     * @param failures of the FixityCheckStatus
+     **/
+    public void setFailures(Map<String, String> failures) {
+        this.failures = failures;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FixityCheckStatus fixityCheckStatus = (FixityCheckStatus) o;
+        return Objects.equals(this.running, fixityCheckStatus.running) &&
+                Objects.equals(this.startTime, fixityCheckStatus.startTime) &&
+                Objects.equals(this.endTime, fixityCheckStatus.endTime) &&
+                Objects.equals(this.objectsChecked, fixityCheckStatus.objectsChecked) &&
+                Objects.equals(this.objectsFailed, fixityCheckStatus.objectsFailed) &&
+                Objects.equals(this.bytesChecked, fixityCheckStatus.bytesChecked) &&
+                Objects.equals(this.failures, fixityCheckStatus.failures);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(running, startTime, endTime, objectsChecked, objectsFailed, bytesChecked, failures);
+    }
+
+    @Override
+    public String toString() {
+        return "class FixityCheckStatus {\n" +
+                "    running: " + running + "\n" +
+                "    startTime: " + startTime + "\n" +
+                "    endTime: " + endTime + "\n" +
+                "    objectsChecked: " + objectsChecked + "\n" +
+                "    objectsFailed: " + objectsFailed + "\n" +
+                "    bytesChecked: " + bytesChecked + "\n" +
+                "    failures: " + failures + "\n" +
+                "}";
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The LocalFileCache is a bounded cache of file content on local disk. It is used in front of S3 storage, so that
+ * files that are requested repeatedly are served from local disk instead of being fetched from S3 every time.
+ *
+ * Entries are stored as files in the cache directory, named after their key. The size and last access time of every
+ * entry are kept in memory, so maintaining the cache does not list the cache directory. The directory is only listed
+ * once, when the cache is initialized from the entries of an earlier run, whose last modified time is their last
+ * access time. Entries that have not been accessed for longer than the maximum age are evicted, and when the total
+ * size of the cache exceeds its capacity the least recently accessed entries are evicted first. The entry that is
+ * being cached is never evicted by its own put. Content larger than the capacity must not be cached, see fits.
+ *
+ * An entry may still be evicted after its path was returned and before the caller opens it. Callers must handle a
+ * NoSuchFileException by reading the content from the repository instead. An entry that is already open stays
+ * readable when it is evicted.
+ *
+ * @author Tim Sanders
+ */
+class LocalFileCache {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalFileCache.class);
+    private static final String ENTRY_SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path cacheDir;
+    private final long maxSize;
+    private final Duration maxAge;
+    //the entries in order of access, least recently accessed first
+    private final LinkedHashMap<Path, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+
+    /**
+     * Initializes the LocalFileCache with the entries found in the cache directory.
+     *
+     * @param cacheDir The directory the cached files are stored in. It is created if it does not exist.
+     * @param maxSize The maximum total size of the cached files in bytes.
+     * @param maxAge The maximum time a cached file is kept without being accessed.
+     * @throws IOException If the cache directory cannot be created an IOException will be thrown.
+     */
+    LocalFileCache(Path cacheDir, long maxSize, Duration maxAge) throws IOException {
+        this.cacheDir = Files.createDirectories(cacheDir);
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        List<CacheEntry> existingEntries;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            existingEntries = files.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .map(this::readEntry)
+                    .flatMap(Optional::stream)
+                    .sorted(Comparator.comparing(cacheEntry -> cacheEntry.lastAccess))
+                    .collect(Collectors.toList());
+        }
+        for (CacheEntry cacheEntry : existingEntries) {
+            entries.put(cacheEntry.path, cacheEntry);
+            totalSize += cacheEntry.size;
+        }
+        evict();
+    }
+
+    /**
+     * Checks whether content of the supplied size can be cached. Content larger than the capacity of the cache is
+     * read from the repository instead, it would only displace all other entries.
+     *
+     * @param size The size of the content in bytes.
+     * @return True if the content fits in the cache
+     */
+    boolean fits(long size) {
+        return size <= maxSize;
+    }
+
+    /**
+     * Gets the cached file of the key, if it is cached and has not expired. The access time of the entry is updated.
+     *
+     * @param key The key of the cached file.
+     * @return The path of the cached file, or empty if it is not cached
+     */
+    synchronized Optional<Path> get(String key) {
+        Path entry = getEntryPath(key);
+        CacheEntry cacheEntry = entries.get(entry);
+        if (cacheEntry == null) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        if (isExpired(cacheEntry, now)) {
+            delete(cacheEntry);
+            return Optional.empty();
+        }
+        cacheEntry.lastAccess = now;
+        try {
+            //the access time is persisted, so it survives a restart
+            Files.setLastModifiedTime(entry, FileTime.from(now));
+        } catch (NoSuchFileException e) {
+            //the entry was deleted outside of the cache
+            entries.remove(entry);
+            totalSize -= cacheEntry.size;
+            return Optional.empty();
+        } catch (IOException e) {
+            LOG.debug("File Service: Unable to update the access time of the cache entry " + entry + ": " + e);
+        }
+        return Optional.of(entry);
+    }
+
+    /**
+     * Caches the content of a stream under the key and evicts other entries if the cache exceeds its capacity. The
+     * content is written to a temporary file first, so a partially written entry is never visible.
+     *
+     * @param key The key of the cached file.
+     * @param content The content to cache. The stream is consumed but not closed.
+     * @return The path of the cached file
+     * @throws IOException If the content cannot be cached an IOException will be thrown.
+     */
+    Path put(String key, InputStream content) throws IOException {
+        Path entry = getEntryPath(key);
+        Path tempEntry = Files.createTempFile(cacheDir, "entry-", TEMP_SUFFIX);
+        try {
+            long size = Files.copy(content, tempEntry, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                Files.move(tempEntry, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                CacheEntry replaced = entries.put(entry, new CacheEntry(entry, size, Instant.now()));
+                totalSize += size - (replaced != null ? replaced.size : 0);
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(tempEntry);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the cached file of the key, if it is cached.
+     *
+     * @param key The key of the cached file.
+     */
+    synchronized void remove(String key) {
+        CacheEntry cacheEntry = entries.get(getEntryPath(key));
+        if (cacheEntry != null) {
+            delete(cacheEntry);
+        }
+    }
+
+    /**
+     * Deletes the temporary files of entries that were never completed, e.g. because of a crash while the entry was
+     * written.
+     *
+     * @param expiredAt Temporary files last modified at or before this time are deleted.
+     */
+    void deleteTempFiles(Instant expiredAt) {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(TEMP_SUFFIX)).forEach(file -> {
+                try {
+                    if (!Files.getLastModifiedTime(file).toInstant().isAfter(expiredAt)) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    LOG.debug("File Service: Skipping cache temp file " + file + ": " + e);
+                }
+            });
+        } catch (IOException e) {
+            LOG.error("File Service: Unable to list the cache directory " + cacheDir + ": " + e);
+        }
+    }
+
+    /**
+     * Evicts the expired entries, and then the least recently accessed entries until the total size of the cache is
+     * within its capacity. The most recently accessed entry is never evicted, it is the entry that was just cached or
+     * returned.
+     */
+    synchronized void evict() {
+        Instant now = Instant.now();
+        List<CacheEntry> leastRecentlyAccessedFirst = new ArrayList<>(entries.values());
+        for (CacheEntry cacheEntry : leastRecentlyAccessedFirst.subList(0, Math.max(0, entries.size() - 1))) {
+            if (totalSize > maxSize || isExpired(cacheEntry, now)) {
+                delete(cacheEntry);
+            }
+        }
+    }
+
+    //must be called holding the lock of the cache
+    private void delete(CacheEntry cacheEntry) {
+        try {
+            Files.deleteIfExists(cacheEntry.path);
+        } catch (IOException e) {
+            //the entry is forgotten anyway, the janitor retries deleting it after a restart
+            LOG.error("File Service: Unable to delete the cache entry " + cacheEntry.path + ": " + e);
+        }
+        entries.remove(cacheEntry.path);
+        totalSize -= cacheEntry.size;
+    }
+
+    private boolean isExpired(CacheEntry cacheEntry, Instant now) {
+        return cacheEntry.lastAccess.plus(maxAge).isBefore(now);
+    }
+
+    private Optional<CacheEntry> readEntry(Path entry) {
+        try {
+            return Optional.of(new CacheEntry(entry, Files.size(entry), Files.getLastModifiedTime(entry).toInstant()));
+        } catch (IOException e) {
+            LOG.debug("File Service: Skipping cache entry " + entry + ": " + e);
+            return Optional.empty();
+        }
+    }
+
+    private Path getEntryPath(String key) {
+        //keys contain characters that are not valid in file names, e.g. the slash of a fileId
+        return cacheDir.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ENTRY_SUFFIX);
+    }
+
+    private static class CacheEntry {
+        private final Path path;
+        private final long size;
+        private Instant lastAccess;
+
+        CacheEntry(Path path, long size, Instant lastAccess) {
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * A Resource of the content of a file on local disk, which falls back to a Resource that streams the content from the
+ * repository when the local file is gone before it is opened. This happens when an entry of the local cache of S3
+ * files is evicted after its path was returned. The content length is that of the fallback, so it is known even if
+ * the local file is gone.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService#getFileResource(String)
+ */
+class LocalFileResource extends FileSystemResource {
+    private final Resource fallback;
+
+    /**
+     * Initializes the LocalFileResource.
+     *
+     * @param filePath The path of the content on local disk.
+     * @param fallback The Resource that is read if the local file is gone.
+     */
+    LocalFileResource(Path filePath, Resource fallback) {
+        super(filePath);
+        this.fallback = fallback;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        try {
+            return super.getInputStream();
+        } catch (NoSuchFileException e) {
+            return fallback.getInputStream();
+        }
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return fallback.contentLength();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.wisc.library.ocfl.api.OcflOption;
+import edu.wisc.library.ocfl.api.OcflRepository;
+import edu.wisc.library.ocfl.api.model.DigestAlgorithm;
+import edu.wisc.library.ocfl.api.model.FileDetails;
+import edu.wisc.library.ocfl.api.model.ObjectVersionId;
+import edu.wisc.library.ocfl.api.model.VersionDetails;
+import edu.wisc.library.ocfl.api.model.VersionInfo;
+import edu.wisc.library.ocfl.aws.OcflS3Client;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+/**
+ * The OcflStorageBackend stores files as objects of an OCFL repository, on the file system (FILE_SYSTEM) or in an S3
+ * bucket (S3). Every object has an inventory that records the versions of the object and the SHA-512 digest of each
+ * content file, so the repository is self-describing and can be validated by any OCFL client.
+ *
+ * OCFL has no place for metadata of a content file, so the mime type detected when a file is stored, and the encoding
+ * of compressed content, are persisted as properties in the message of the version, after the first line of the
+ * message. The object only holds the content file, and the metadata is read from the inventory that is read to
+ * describe the object anyway, when the metadata of a file is not cached.
+ *
+ * @author Tim Sanders
+ * @see StorageBackend
+ */
+class OcflStorageBackend implements StorageBackend {
+    private static final String COMMIT_MESSAGE = "Pass-Core File Service: Initial commit";
+    private static final String CONTENT_TYPE_PROPERTY = "contentType";
+
+    private final OcflRepository ocflRepository;
+    private final Path ocflLoc;
+    private final OcflS3Client ocflS3Client;
+    private final S3Client s3Client;
+    private final String bucketName;
+
+    /**
+     * Initializes the OcflStorageBackend of an OCFL repository on the file system.
+     *
+     * @param ocflRepository The OCFL repository.
+     * @param ocflLoc The OCFL storage root of the repository.
+     */
+    OcflStorageBackend(OcflRepository ocflRepository, Path ocflLoc) {
+        this.ocflRepository = ocflRepository;
+        this.ocflLoc = ocflLoc;
+        this.ocflS3Client = null;
+        this.s3Client = null;
+        this.bucketName = null;
+    }
+
+    /**
+     * Initializes the OcflStorageBackend of an OCFL repository in an S3 bucket.
+     *
+     * @param ocflRepository The OCFL repository.
+     * @param ocflS3Client The OCFL client of the S3 bucket of the repository.
+     * @param s3Client The S3 client of the bucket, which reads byte ranges of content files.
+     * @param bucketName The name of the S3 bucket of the repository.
+     */
+    OcflStorageBackend(OcflRepository ocflRepository, OcflS3Client ocflS3Client, S3Client s3Client,
+                       String bucketName) {
+        this.ocflRepository = ocflRepository;
+        this.ocflLoc = null;
+        this.ocflS3Client = ocflS3Client;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void write(String objectId, String contentFileName, String contentType, InputStream content)
+            throws IOException {
+        //the content is streamed into the OCFL work directory, which computes the digest as it is written
+        ocflRepository.updateObject(ObjectVersionId.head(objectId), toVersionInfo(contentType, null),
+                updater -> updater.writeFile(content, contentFileName));
+    }
+
+    @Override
+    public void move(String objectId, String contentFileName, String contentType, ContentEncoding contentEncoding,
+                     Path source, String digest) throws IOException {
+        ocflRepository.updateObject(ObjectVersionId.head(objectId), toVersionInfo(contentType, contentEncoding),
+                updater -> updater.addPath(source, contentFileName, OcflOption.MOVE_SOURCE));
+    }
+
+    private static VersionInfo toVersionInfo(String contentType, ContentEncoding contentEncoding) throws IOException {
+        Properties metadataProperties = new Properties();
+        metadataProperties.setProperty(CONTENT_TYPE_PROPERTY, contentType);
+        if (contentEncoding != null) {
+            contentEncoding.toProperties(metadataProperties);
+        }
+        StringWriter out = new StringWriter();
+        metadataProperties.store(out, null);
+        //the timestamp comment of the properties is left out, the version records when it was created
+        String metadata = out.toString().lines()
+                .filter(line -> !line.startsWith("#"))
+                .collect(Collectors.joining("\n"));
+        return new VersionInfo().setMessage(COMMIT_MESSAGE + "\n" + metadata);
+    }
+
+    private static Properties getMetadataProperties(VersionInfo versionInfo) throws IOException {
+        Properties metadataProperties = new Properties();
+        String message = versionInfo == null ? null : versionInfo.getMessage();
+        int metadataStart = message == null ? -1 : message.indexOf('\n');
+        if (metadataStart >= 0) {
+            metadataProperties.load(new StringReader(message.substring(metadataStart + 1)));
+        }
+        return metadataProperties;
+    }
+
+    @Override
+    public FileMetadata describe(String objectId, Long knownSize, String knownContentType) throws IOException {
+        VersionDetails versionDetails = ocflRepository.describeVersion(ObjectVersionId.head(objectId));
+        FileDetails fileDetails = versionDetails.getFiles().iterator().next();
+        String fileRepoRelPath = fileDetails.getStorageRelativePath();
+
+        long size;
+        if (knownSize != null) {
+            size = knownSize;
+        } else if (ocflLoc != null) {
+            size = Files.size(Paths.get(ocflLoc.toString(), fileRepoRelPath));
+        } else {
+            size = ocflS3Client.head(fileRepoRelPath).getContentLength();
+        }
+
+        Properties metadataProperties = getMetadataProperties(versionDetails.getVersionInfo());
+        String contentType = knownContentType != null ? knownContentType
+                : metadataProperties.getProperty(CONTENT_TYPE_PROPERTY);
+        ContentEncoding contentEncoding = ContentEncoding.fromProperties(metadataProperties);
+
+        return new FileMetadata(fileRepoRelPath, fileDetails.getPath(),
+                fileDetails.getFixity().get(DigestAlgorithm.sha512), size,
+                versionDetails.getCreated().toInstant(),
+                FileMetadata.orDefaultContentType(contentType, fileDetails.getPath()), contentEncoding);
+    }
+
+    @Override
+    public Map<String, String> getContentDigests(String objectId) {
+        Map<String, String> contentDigests = new LinkedHashMap<>();
+        for (VersionDetails versionDetails : ocflRepository.describeObject(objectId).getVersionMap().values()) {
+            for (FileDetails fileDetails : versionDetails.getFiles()) {
+                contentDigests.put(fileDetails.getStorageRelativePath(),
+                        fileDetails.getFixity().get(DigestAlgorithm.sha512));
+            }
+        }
+        return contentDigests;
+    }
+
+    @Override
+    public InputStream openStream(String storageRelativePath) throws IOException {
+        if (ocflLoc != null) {
+            return Files.newInputStream(Paths.get(ocflLoc.toString(), storageRelativePath));
+        }
+        return ocflS3Client.downloadStream(storageRelativePath);
+    }
+
+    @Override
+    public InputStream openStream(String storageRelativePath, long offset) throws IOException {
+        if (ocflLoc != null) {
+            FileChannel channel = FileChannel.open(Paths.get(ocflLoc.toString(), storageRelativePath),
+                    StandardOpenOption.READ);
+            try {
+                return Channels.newInputStream(channel.position(offset));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        //the storage relative path is relative to the repo prefix, like every key of the OCFL S3 client
+        String prefix = ocflS3Client.prefix();
+        String key = prefix == null || prefix.isEmpty() ? storageRelativePath : prefix + "/" + storageRelativePath;
+        ResponseInputStream<GetObjectResponse> response;
+        try {
+            response = s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range("bytes=" + offset + "-")
+                    .build());
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(storageRelativePath);
+        }
+        //the caller usually stops reading before the end of a range, the rest of the response is not drained
+        return new FilterInputStream(response) {
+            @Override
+            public void close() throws IOException {
+                response.abort();
+                super.close();
+            }
+        };
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String storageRelativePath) {
+        if (ocflLoc == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(ocflLoc.toString(), storageRelativePath));
+    }
+
+    @Override
+    public boolean contains(String objectId) {
+        return ocflRepository.containsObject(objectId);
+    }
+
+    @Override
+    public void purge(String objectId) {
+        ocflRepository.purgeObject(objectId);
+    }
+
+    @Override
+    public Stream<String> listObjectIds() {
+        return ocflRepository.listObjectIds();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * A Resource of a file in the OCFL repository that is read as a stream through the FileStorageService. Unlike an
+ * InputStreamResource, a new stream is opened on every call to getInputStream and the content length is known up
+ * front, so it can be used to serve byte ranges of the file. It is used when the content of the file is not available
+ * on local disk, e.g. with S3 storage.
+ *
+ * Byte ranges are served by skipping the bytes before the range. The stream of the decoded content is only opened on
+ * the first read, so a skip before it moves the offset the content is read from instead, and on S3 only the bytes
+ * from the start of the range on are requested. Content that was compressed when it was stored, and the stored
+ * content of the encoded Resource, fall back to a full read from the start.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService#getFileResource(String)
+ */
+class OcflStreamResource extends AbstractResource {
+    private final FileStorageService fileStorageService;
+    private final String fileId;
+    private final long contentLength;
+    private final boolean encoded;
+
+    /**
+     * Initializes the OcflStreamResource for the supplied fileId.
+     *
+     * @param fileStorageService The FileStorageService that opens the streams of the file.
+     * @param fileId The fileId of the file.
+     * @param contentLength The size of the content of the Resource in bytes.
+     * @param encoded True if the Resource is the stored content, which is not decoded if it was compressed.
+     */
+    OcflStreamResource(FileStorageService fileStorageService, String fileId, long contentLength, boolean encoded) {
+        this.fileStorageService = fileStorageService;
+        this.fileId = fileId;
+        this.contentLength = contentLength;
+        this.encoded = encoded;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return encoded ? fileStorageService.getEncodedFileStream(fileId) : new OffsetInputStream();
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return fileId.substring(fileId.indexOf('/') + 1);
+    }
+
+    @Override
+    public String getDescription() {
+        return "OCFL file [" + fileId + "]";
+    }
+
+    /**
+     * A stream of the decoded content that is opened on the first read, from the offset the skips before it reached.
+     */
+    private class OffsetInputStream extends InputStream {
+        private long offset;
+        private InputStream contentStream;
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (contentStream != null) {
+                return contentStream.skip(n);
+            }
+            long skipped = Math.max(0, Math.min(n, contentLength - offset));
+            offset += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return open().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return open().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (contentStream != null) {
+                contentStream.close();
+            }
+        }
+
+        private InputStream open() throws IOException {
+            if (contentStream == null) {
+                contentStream = offset < contentLength ? fileStorageService.getFileStream(fileId, offset)
+                        : InputStream.nullInputStream();
+            }
+            return contentStream;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.wisc.library.ocfl.api.exception.OcflIOException;
+import edu.wisc.library.ocfl.aws.OcflS3Client;
+import edu.wisc.library.ocfl.core.storage.cloud.CloudClient;
+import edu.wisc.library.ocfl.core.storage.cloud.CloudObjectKey;
+import edu.wisc.library.ocfl.core.storage.cloud.HeadResult;
+import edu.wisc.library.ocfl.core.storage.cloud.ListResult;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * The ParallelS3CloudClient is the CloudClient used by the OCFL repository with S3 storage. It delegates to the
+ * OcflS3Client, except for uploading files that are larger than the configured part size: those are uploaded with an
+ * S3 multipart upload whose parts are sent concurrently, instead of one part after another. This lets the ingest of
+ * large files scale with the available bandwidth instead of being bound to a single stream.
+ *
+ * Each part is read directly from the file staged in the OCFL work directory, so no part is loaded into memory.
+ *
+ * @author Tim Sanders
+ * @see StorageProperties#getS3MultipartPartSize()
+ * @see StorageProperties#getS3MultipartConcurrency()
+ */
+class ParallelS3CloudClient implements CloudClient {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelS3CloudClient.class);
+
+    private final OcflS3Client delegate;
+    private final S3Client s3Client;
+    private final String bucket;
+    private final long partSize;
+    private final ExecutorService partExecutor;
+
+    /**
+     * Initializes the ParallelS3CloudClient.
+     *
+     * @param delegate The OcflS3Client that all other operations are delegated to.
+     * @param s3Client The S3Client used for the multipart uploads.
+     * @param bucket The name of the S3 bucket.
+     * @param partSize The size in bytes of the parts of a multipart upload.
+     * @param concurrency The maximum number of parts that are uploaded at the same time.
+     */
+    ParallelS3CloudClient(OcflS3Client delegate, S3Client s3Client, String bucket, long partSize, int concurrency) {
+        this.delegate = delegate;
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.partSize = partSize;
+        this.partExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "file-service-s3-upload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CloudObjectKey uploadFile(Path srcPath, String dstPath) {
+        return uploadFile(srcPath, dstPath, null);
+    }
+
+    @Override
+    public CloudObjectKey uploadFile(Path srcPath, String dstPath, String contentType) {
+        long fileSize;
+        try {
+            fileSize = Files.size(srcPath);
+        } catch (IOException e) {
+            throw OcflIOException.from(e);
+        }
+        if (fileSize <= partSize) {
+            return delegate.uploadFile(srcPath, dstPath, contentType);
+        }
+
+        CloudObjectKey dstKey = CloudObjectKey.builder().prefix(delegate.prefix()).buildFromPath(dstPath);
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(dstKey.getKey())
+                .contentType(contentType)
+                .build()).uploadId();
+        LOG.debug("File Service: Uploading " + srcPath + " of size " + fileSize + " to " + dstKey.getKey()
+                + " in parts of " + partSize + " bytes");
+
+        try {
+            List<Future<CompletedPart>> partUploads = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < fileSize; offset += partSize) {
+                long partOffset = offset;
+                long partLength = Math.min(partSize, fileSize - offset);
+                int partNum = partNumber++;
+                partUploads.add(partExecutor.submit(() ->
+                        uploadPart(srcPath, dstKey, uploadId, partNum, partOffset, partLength)));
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>();
+            for (Future<CompletedPart> partUpload : partUploads) {
+                completedParts.add(partUpload.get());
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(dstKey.getKey())
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (InterruptedException | ExecutionException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(dstKey.getKey())
+                    .uploadId(uploadId)
+                    .build());
+            throw new OcflIOException("File Service: Failed to upload " + srcPath + " to " + dstKey.getKey(), e);
+        }
+        return dstKey;
+    }
+
+    private CompletedPart uploadPart(Path srcPath, CloudObjectKey dstKey, String uploadId, int partNumber,
+                                     long offset, long length) {
+        String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(dstKey.getKey())
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength(length)
+                        .build(),
+                RequestBody.fromContentProvider(() -> openPart(srcPath, offset, length), length,
+                        "application/octet-stream")).eTag();
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+    }
+
+    private InputStream openPart(Path srcPath, long offset, long length) {
+        try {
+            InputStream in = Files.newInputStream(srcPath);
+            IOUtils.skipFully(in, offset);
+            return new BoundedInputStream(in, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String bucket() {
+        return delegate.bucket();
+    }
+
+    @Override
+    public String prefix() {
+        return delegate.prefix();
+    }
+
+    @Override
+    public CloudObjectKey uploadBytes(String dstPath, byte[] bytes, String contentType) {
+        return delegate.uploadBytes(dstPath, bytes, contentType);
+    }
+
+    @Override
+    public CloudObjectKey copyObject(String srcPath, String dstPath) {
+        return delegate.copyObject(srcPath, dstPath);
+    }
+
+    @Override
+    public Path downloadFile(String srcPath, Path dstPath) {
+        return delegate.downloadFile(srcPath, dstPath);
+    }
+
+    @Override
+    public InputStream downloadStream(String srcPath) {
+        return delegate.downloadStream(srcPath);
+    }
+
+    @Override
+    public String downloadString(String srcPath) {
+        return delegate.downloadString(srcPath);
+    }
+
+    @Override
+    public HeadResult head(String path) {
+        return delegate.head(path);
+    }
+
+    @Override
+    public ListResult list(String prefix) {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public ListResult listDirectory(String path) {
+        return delegate.listDirectory(path);
+    }
+
+    @Override
+    public boolean directoryExists(String path) {
+        return delegate.directoryExists(path);
+    }
+
+    @Override
+    public void deletePath(String path) {
+        delegate.deletePath(path);
+    }
+
+    @Override
+    public void deleteObjects(Collection<String> objectPaths) {
+        delegate.deleteObjects(objectPaths);
+    }
+
+    @Override
+    public void safeDeleteObjects(String... objectPaths) {
+        delegate.safeDeleteObjects(objectPaths);
+    }
+
+    @Override
+    public void safeDeleteObjects(Collection<String> objectPaths) {
+        delegate.safeDeleteObjects(objectPaths);
+    }
+
+    @Override
+    public boolean bucketExists() {
+        return delegate.bucketExists();
+    }
+}
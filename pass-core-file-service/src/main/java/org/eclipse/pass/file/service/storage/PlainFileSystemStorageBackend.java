@@ -0,0 +1,229 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import edu.wisc.library.ocfl.api.exception.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * The PlainFileSystemStorageBackend stores files directly on the file system (PLAIN_FILE_SYSTEM), without the
+ * inventories and version directories of OCFL. Storing a file writes its content file and a small properties file with
+ * its id, SHA-512 digest, mime type and encoding, instead of the six files and inventory serialization of a new OCFL
+ * object, which dominates the latency of storing small files. The repository is not an OCFL repository and cannot be
+ * read by other OCFL clients.
+ *
+ * Every object is a directory named by a UUID derived from the object id, nested in two levels of directories named by
+ * the first characters of the UUID so that no directory grows too large. An object is staged in the working directory
+ * and moved into place with a single atomic rename, so a partially written object is never visible. The working
+ * directory must therefore be on the same mount as the storage directory.
+ *
+ * @author Tim Sanders
+ * @see StorageBackend
+ */
+class PlainFileSystemStorageBackend implements StorageBackend {
+    private static final Logger LOG = LoggerFactory.getLogger(PlainFileSystemStorageBackend.class);
+    private static final String OBJECT_FILE = "object.properties";
+    private static final String OBJECT_ID_PROPERTY = "objectId";
+    private static final String CONTENT_FILE_PROPERTY = "contentFile";
+    private static final String DIGEST_PROPERTY = "sha512";
+    private static final String CONTENT_TYPE_PROPERTY = "contentType";
+
+    private final Path storageLoc;
+    private final Path workLoc;
+
+    /**
+     * Initializes the PlainFileSystemStorageBackend.
+     *
+     * @param storageLoc The directory the objects are stored in. It is created if it does not exist.
+     * @param workLoc The working directory objects are staged in, on the same mount as the storage directory.
+     * @throws IOException If the storage directory cannot be created an IOException will be thrown.
+     */
+    PlainFileSystemStorageBackend(Path storageLoc, Path workLoc) throws IOException {
+        this.storageLoc = Files.createDirectories(storageLoc);
+        this.workLoc = workLoc;
+    }
+
+    @Override
+    public void write(String objectId, String contentFileName, String contentType, InputStream content)
+            throws IOException {
+        Path stagingDir = Files.createTempDirectory(workLoc, "plain-");
+        try {
+            MessageDigest sha512;
+            try {
+                sha512 = MessageDigest.getInstance("SHA-512");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("File Service: SHA-512 is not supported", e);
+            }
+            Files.copy(new DigestInputStream(content, sha512), stagingDir.resolve(contentFileName));
+            commit(objectId, contentFileName, contentType, null, stagingDir,
+                    FileStorageService.toHex(sha512.digest()));
+        } finally {
+            FileSystemUtils.deleteRecursively(stagingDir);
+        }
+    }
+
+    @Override
+    public void move(String objectId, String contentFileName, String contentType, ContentEncoding contentEncoding,
+                     Path source, String digest) throws IOException {
+        Path stagingDir = Files.createTempDirectory(workLoc, "plain-");
+        try {
+            Files.move(source, stagingDir.resolve(contentFileName), StandardCopyOption.ATOMIC_MOVE);
+            commit(objectId, contentFileName, contentType, contentEncoding, stagingDir, digest);
+        } finally {
+            FileSystemUtils.deleteRecursively(stagingDir);
+        }
+    }
+
+    private void commit(String objectId, String contentFileName, String contentType, ContentEncoding contentEncoding,
+                        Path stagingDir, String digest) throws IOException {
+        Properties objectProperties = new Properties();
+        objectProperties.setProperty(OBJECT_ID_PROPERTY, objectId);
+        objectProperties.setProperty(CONTENT_FILE_PROPERTY, contentFileName);
+        objectProperties.setProperty(DIGEST_PROPERTY, digest);
+        objectProperties.setProperty(CONTENT_TYPE_PROPERTY, contentType);
+        if (contentEncoding != null) {
+            contentEncoding.toProperties(objectProperties);
+        }
+        try (OutputStream out = Files.newOutputStream(stagingDir.resolve(OBJECT_FILE))) {
+            objectProperties.store(out, "Pass-Core File Service object");
+        }
+        Path objectDir = getObjectDir(objectId);
+        Files.createDirectories(objectDir.getParent());
+        Files.move(stagingDir, objectDir, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public FileMetadata describe(String objectId, Long knownSize, String knownContentType) throws IOException {
+        Properties objectProperties = readObjectProperties(getObjectDir(objectId));
+        String contentFileName = objectProperties.getProperty(CONTENT_FILE_PROPERTY);
+        Path contentFile = getObjectDir(objectId).resolve(contentFileName);
+        long size = knownSize != null ? knownSize : Files.size(contentFile);
+        String contentType = knownContentType != null ? knownContentType
+                : objectProperties.getProperty(CONTENT_TYPE_PROPERTY);
+        return new FileMetadata(storageLoc.relativize(contentFile).toString(), contentFileName,
+                objectProperties.getProperty(DIGEST_PROPERTY), size,
+                Files.getLastModifiedTime(contentFile).toInstant(), FileMetadata.orDefaultContentType(contentType,
+                contentFileName), ContentEncoding.fromProperties(objectProperties));
+    }
+
+    @Override
+    public Map<String, String> getContentDigests(String objectId) throws IOException {
+        Path objectDir = getObjectDir(objectId);
+        Properties objectProperties = readObjectProperties(objectDir);
+        Path contentFile = objectDir.resolve(objectProperties.getProperty(CONTENT_FILE_PROPERTY));
+        return Collections.singletonMap(storageLoc.relativize(contentFile).toString(),
+                objectProperties.getProperty(DIGEST_PROPERTY));
+    }
+
+    @Override
+    public InputStream openStream(String storageRelativePath) throws IOException {
+        return Files.newInputStream(storageLoc.resolve(storageRelativePath));
+    }
+
+    @Override
+    public InputStream openStream(String storageRelativePath, long offset) throws IOException {
+        FileChannel channel = FileChannel.open(storageLoc.resolve(storageRelativePath), StandardOpenOption.READ);
+        try {
+            return Channels.newInputStream(channel.position(offset));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Path> getLocalPath(String storageRelativePath) {
+        return Optional.of(storageLoc.resolve(storageRelativePath));
+    }
+
+    @Override
+    public boolean contains(String objectId) {
+        return Files.exists(getObjectDir(objectId).resolve(OBJECT_FILE));
+    }
+
+    @Override
+    public void purge(String objectId) {
+        try {
+            FileSystemUtils.deleteRecursively(getObjectDir(objectId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<String> listObjectIds() {
+        try {
+            return Files.find(storageLoc, 3, (path, attributes) -> attributes.isDirectory()
+                            && storageLoc.relativize(path).getNameCount() == 3)
+                    .map(this::readObjectId)
+                    .filter(Objects::nonNull);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String readObjectId(Path objectDir) {
+        try {
+            return readObjectProperties(objectDir).getProperty(OBJECT_ID_PROPERTY);
+        } catch (NotFoundException | IOException e) {
+            //the object was purged concurrently
+            LOG.debug("File Service: Skipping object directory " + objectDir + ": " + e);
+            return null;
+        }
+    }
+
+    private Properties readObjectProperties(Path objectDir) throws IOException {
+        Properties objectProperties = new Properties();
+        try (InputStream in = Files.newInputStream(objectDir.resolve(OBJECT_FILE))) {
+            objectProperties.load(in);
+        } catch (NoSuchFileException e) {
+            throw new NotFoundException("File Service: The object in " + objectDir + " was not found");
+        }
+        return objectProperties;
+    }
+
+    private Path getObjectDir(String objectId) {
+        //object ids contain characters that are not valid in file names, e.g. the slash of a fileId
+        String objectUuid = UUID.nameUUIDFromBytes(objectId.getBytes(StandardCharsets.UTF_8)).toString();
+        return storageLoc.resolve(objectUuid.substring(0, 2)).resolve(objectUuid.substring(2, 4)).resolve(objectUuid);
+    }
+}
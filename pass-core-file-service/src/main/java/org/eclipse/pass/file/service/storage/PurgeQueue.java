@@ -0,0 +1,245 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PurgeQueue purges OCFL objects in the background, so that deleting a file does not wait for the purge, which for
+ * S3 means listing and deleting every key of the object. Each queued purge is persisted as a file in the queue
+ * directory until it succeeds, so purges that are queued when the service stops are resumed when it starts again.
+ * A purge that fails is retried with an exponential backoff, up to the maximum number of attempts. A purge that still
+ * fails then is moved to the failed directory of the queue and is no longer retried, so one object that cannot be
+ * purged does not log errors forever. Its object stays deleted for the File Service. A failed purge is retried after
+ * its entry is moved back from the failed directory to the queue directory and the service is restarted.
+ *
+ * @author Tim Sanders
+ * @see FileStorageService#deleteFile(String)
+ */
+class PurgeQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(PurgeQueue.class);
+    private static final String ENTRY_SUFFIX = ".purge";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+    private static final String FAILED_DIR = "failed";
+
+    private final Path queueDir;
+    private final Path failedDir;
+    private final Consumer<String> purge;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+    private final Set<String> pendingObjectIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> failedObjectIds = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService purgeExecutor;
+
+    /**
+     * Initializes the PurgeQueue and resumes the purges that were queued before.
+     *
+     * @param queueDir The directory the queued purges are persisted in. It is created if it does not exist.
+     * @param purge The function that purges an OCFL object by its id.
+     * @param concurrency The number of purges that run at the same time.
+     * @param retryDelay The delay before a failed purge is retried for the first time.
+     * @param maxAttempts The number of attempts of a purge before it is moved to the failed directory.
+     * @throws IOException If the queue directory cannot be created or read an IOException will be thrown.
+     */
+    PurgeQueue(Path queueDir, Consumer<String> purge, int concurrency, Duration retryDelay, int maxAttempts)
+            throws IOException {
+        this.queueDir = Files.createDirectories(queueDir);
+        this.failedDir = Files.createDirectories(queueDir.resolve(FAILED_DIR));
+        this.purge = purge;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        AtomicInteger threadCount = new AtomicInteger();
+        purgeExecutor = new ScheduledThreadPoolExecutor(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "file-service-purge-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (Stream<Path> entries = Files.list(queueDir)) {
+            entries.filter(entry -> entry.getFileName().toString().endsWith(ENTRY_SUFFIX)).forEach(entry -> {
+                try {
+                    String objectId = Files.readString(entry, StandardCharsets.UTF_8);
+                    pendingObjectIds.add(objectId);
+                    schedule(objectId, 1, Duration.ZERO);
+                } catch (IOException e) {
+                    LOG.error("File Service: Unable to read the queued purge " + entry + ": " + e);
+                }
+            });
+        }
+        if (!pendingObjectIds.isEmpty()) {
+            LOG.info("File Service: Resuming " + pendingObjectIds.size() + " queued purges");
+        }
+        try (Stream<Path> entries = Files.list(failedDir)) {
+            entries.filter(entry -> entry.getFileName().toString().endsWith(ENTRY_SUFFIX)).forEach(entry -> {
+                try {
+                    failedObjectIds.add(Files.readString(entry, StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    LOG.error("File Service: Unable to read the failed purge " + entry + ": " + e);
+                }
+            });
+        }
+        if (!failedObjectIds.isEmpty()) {
+            LOG.warn("File Service: " + failedObjectIds.size() + " purges failed and are not retried, see " +
+                    failedDir);
+        }
+    }
+
+    /**
+     * Stops purging. Queued purges that have not completed remain in the queue directory and are resumed when the
+     * queue is initialized again.
+     */
+    void shutdown() {
+        purgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues the purge of an OCFL object. The purge is persisted before this method returns, and it is started right
+     * away. A purge that failed before is queued again.
+     *
+     * @param objectId The id of the OCFL object to purge.
+     * @throws IOException If the purge cannot be persisted an IOException will be thrown.
+     */
+    void enqueue(String objectId) throws IOException {
+        Path entry = getEntryPath(objectId);
+        Path tempEntry = Files.createTempFile(queueDir, "entry-", ".tmp");
+        try {
+            Files.writeString(tempEntry, objectId, StandardCharsets.UTF_8);
+            Files.move(tempEntry, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempEntry);
+        }
+        Files.deleteIfExists(getFailedEntryPath(objectId));
+        failedObjectIds.remove(objectId);
+        if (pendingObjectIds.add(objectId)) {
+            schedule(objectId, 1, Duration.ZERO);
+        }
+    }
+
+    /**
+     * Gets whether the purge of an OCFL object is queued and has not completed yet.
+     *
+     * @param objectId The id of the OCFL object.
+     * @return True if the OCFL object is waiting to be purged
+     */
+    boolean isPending(String objectId) {
+        return pendingObjectIds.contains(objectId);
+    }
+
+    /**
+     * Gets whether an OCFL object belongs to deleted files, because its purge is queued and has not completed yet, or
+     * because its purge failed.
+     *
+     * @param objectId The id of the OCFL object.
+     * @return True if the OCFL object is waiting to be purged or its purge failed
+     */
+    boolean isDeleted(String objectId) {
+        return pendingObjectIds.contains(objectId) || failedObjectIds.contains(objectId);
+    }
+
+    /**
+     * Gets the number of purges that are queued and have not completed yet.
+     *
+     * @return The number of pending purges
+     */
+    int getPendingCount() {
+        return pendingObjectIds.size();
+    }
+
+    /**
+     * Gets the number of purges that failed on every attempt and are no longer retried.
+     *
+     * @return The number of failed purges
+     */
+    int getFailedCount() {
+        return failedObjectIds.size();
+    }
+
+    private void schedule(String objectId, int attempt, Duration delay) {
+        try {
+            purgeExecutor.schedule(() -> process(objectId, attempt), delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //the queue was shut down, the purge stays persisted and is resumed on the next start
+            LOG.info("File Service: Purge of " + objectId + " is left queued until the next start");
+        }
+    }
+
+    private void process(String objectId, int attempt) {
+        try {
+            purge.accept(objectId);
+            Files.deleteIfExists(getEntryPath(objectId));
+            pendingObjectIds.remove(objectId);
+            LOG.info("File Service: Purged object " + objectId);
+        } catch (Exception e) {
+            if (attempt >= maxAttempts) {
+                fail(objectId, attempt, e);
+                return;
+            }
+            Duration delay = retryDelay.multipliedBy(1L << Math.min(attempt - 1, 20));
+            if (delay.compareTo(MAX_RETRY_DELAY) > 0) {
+                delay = MAX_RETRY_DELAY;
+            }
+            LOG.error("File Service: Purge of " + objectId + " failed on attempt " + attempt + ", retrying in " +
+                    delay + ": " + e);
+            schedule(objectId, attempt + 1, delay);
+        }
+    }
+
+    private void fail(String objectId, int attempt, Exception cause) {
+        try {
+            Files.move(getEntryPath(objectId), getFailedEntryPath(objectId), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //the entry stays in the queue directory, the purge is retried on the next start
+            LOG.error("File Service: Unable to move the failed purge of " + objectId + ": " + e);
+        }
+        failedObjectIds.add(objectId);
+        pendingObjectIds.remove(objectId);
+        LOG.error("File Service: Purge of " + objectId + " failed on all " + attempt + " attempts and is no longer " +
+                "retried: " + cause);
+    }
+
+    private Path getEntryPath(String objectId) {
+        return queueDir.resolve(getEntryName(objectId));
+    }
+
+    private Path getFailedEntryPath(String objectId) {
+        return failedDir.resolve(getEntryName(objectId));
+    }
+
+    private static String getEntryName(String objectId) {
+        //object ids contain characters that are not valid in file names, e.g. the slash of a fileId
+        return UUID.nameUUIDFromBytes(objectId.getBytes(StandardCharsets.UTF_8)) + ENTRY_SUFFIX;
+    }
+}
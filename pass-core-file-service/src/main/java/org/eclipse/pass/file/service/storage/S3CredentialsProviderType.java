@@ -0,0 +1,17 @@
+package org.eclipse.pass.file.service.storage;
+
+/**
+ * The S3CredentialsProviderType enum defines how the File Service authenticates to S3. ANONYMOUS sends unsigned
+ * requests, e.g. to a local S3 mock. DEFAULT uses the default credentials provider chain of the AWS SDK, which looks
+ * for credentials in the environment variables, the Java system properties, the AWS profile files, and the container
+ * and EC2 instance metadata, in that order.
+ */
+public enum S3CredentialsProviderType {
+    ANONYMOUS("ANONYMOUS"),
+    DEFAULT("DEFAULT");
+
+    public final String label;
+    private S3CredentialsProviderType(String label) {
+        this.label = label;
+    }
+}
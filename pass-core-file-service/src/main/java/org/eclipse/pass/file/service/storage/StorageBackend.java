@@ -0,0 +1,141 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * A StorageBackend persists the content of files for the FileStorageService. The content of a file is stored as an
+ * object with a single content file; the FileStorageService decides which object a file is stored in, and takes care
+ * of caching, deduplication and purging on top of the backend. Each StorageServiceType is implemented by a backend.
+ * The mime type of the content is detected once when it is stored, and is persisted with the object by the backend,
+ * like the encoding of content that is compressed as it is stored.
+ *
+ * An object that does not exist is reported with a NotFoundException of the OCFL API, whatever the backend, so the
+ * FileStorageService handles missing files the same way for every backend.
+ *
+ * @author Tim Sanders
+ * @see StorageServiceType
+ * @see FileStorageService
+ */
+interface StorageBackend {
+
+    /**
+     * Stores the content of a stream as a new object.
+     *
+     * @param objectId The id of the new object.
+     * @param contentFileName The name of the content file in the object.
+     * @param contentType The mime type of the content.
+     * @param content The content of the file. The stream is consumed but not closed.
+     * @throws IOException If the content cannot be stored an IOException will be thrown.
+     */
+    void write(String objectId, String contentFileName, String contentType, InputStream content) throws IOException;
+
+    /**
+     * Stores a file as a new object by moving it into storage. The file must be on the same mount as the working
+     * directory of the File Service.
+     *
+     * @param objectId The id of the new object.
+     * @param contentFileName The name of the content file in the object.
+     * @param contentType The mime type of the content.
+     * @param contentEncoding The encoding of the file, or null if the file is the content as uploaded.
+     * @param source The file that is moved into the object.
+     * @param digest The hex encoded SHA-512 digest of the file.
+     * @throws IOException If the file cannot be stored an IOException will be thrown.
+     */
+    void move(String objectId, String contentFileName, String contentType, ContentEncoding contentEncoding,
+              Path source, String digest) throws IOException;
+
+    /**
+     * Reads the metadata of the content file of the most recent version of an object. The mime type is the one
+     * persisted with the object; objects stored before it was persisted get the mime type of the extension of their
+     * content file.
+     *
+     * @param objectId The id of the object.
+     * @param knownSize The size of the content file in bytes if it is already known, otherwise null and the size is
+     *                  read from the storage.
+     * @param knownContentType The mime type of the content if it is already known, otherwise null and the mime type
+     *                         is read from the storage.
+     * @return The metadata of the content file
+     * @throws IOException If the metadata cannot be read an IOException will be thrown.
+     */
+    FileMetadata describe(String objectId, Long knownSize, String knownContentType) throws IOException;
+
+    /**
+     * Gets the SHA-512 digests of all content files of an object, of every version, as recorded when they were stored.
+     *
+     * @param objectId The id of the object.
+     * @return The hex encoded digest of each content file by its storage relative path
+     * @throws IOException If the digests cannot be read an IOException will be thrown.
+     */
+    Map<String, String> getContentDigests(String objectId) throws IOException;
+
+    /**
+     * Opens a stream of a content file. The caller is responsible for closing the stream.
+     *
+     * @param storageRelativePath The storage relative path of the content file.
+     * @return A stream of the content
+     * @throws IOException If the content cannot be read an IOException will be thrown.
+     */
+    InputStream openStream(String storageRelativePath) throws IOException;
+
+    /**
+     * Opens a stream of a content file starting at an offset, so the bytes before the offset are not read from
+     * storage. The caller is responsible for closing the stream.
+     *
+     * @param storageRelativePath The storage relative path of the content file.
+     * @param offset The offset of the first byte of the stream, less than the size of the content file.
+     * @return A stream of the content from the offset to the end
+     * @throws IOException If the content cannot be read an IOException will be thrown.
+     */
+    InputStream openStream(String storageRelativePath, long offset) throws IOException;
+
+    /**
+     * Gets the absolute path of a content file on local disk, if the backend stores content on local disk.
+     *
+     * @param storageRelativePath The storage relative path of the content file.
+     * @return The absolute path of the content file, or empty if the content is not on local disk
+     */
+    Optional<Path> getLocalPath(String storageRelativePath);
+
+    /**
+     * Determines whether an object exists.
+     *
+     * @param objectId The id of the object.
+     * @return True if the object exists
+     */
+    boolean contains(String objectId);
+
+    /**
+     * Permanently deletes an object and all of its content. Purging an object that does not exist does nothing.
+     *
+     * @param objectId The id of the object.
+     */
+    void purge(String objectId);
+
+    /**
+     * Gets a lazy stream of the ids of all objects. The stream must be closed.
+     *
+     * @return The ids of the objects
+     */
+    Stream<String> listObjectIds();
+}
@@ -16,11 +16,15 @@
  */
 package org.eclipse.pass.file.service.storage;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.retry.RetryMode;
 import software.amazon.awssdk.regions.Region;
 
 /**
@@ -43,6 +47,40 @@ public class StorageProperties {
     private String s3Region;
     private String s3Endpoint;
     private String s3RepoPrefix;
+    private boolean eagerInitEnabled = false;
+    private int metadataCacheSize = 10000;
+    private boolean dedupEnabled = false;
+    private boolean compressionEnabled = false;
+    private List<String> compressionContentTypes = List.of("text/*", "application/xml", "application/json");
+    private DataSize compressionMinSize = DataSize.ofKilobytes(1);
+    private int batchUploadConcurrency = 4;
+    private int purgeConcurrency = 2;
+    private Duration purgeRetryDelay = Duration.ofMinutes(1);
+    private int purgeMaxAttempts = 10;
+    private Duration tempFileExpiration = Duration.ofHours(1);
+    private Duration uploadSessionExpiration = Duration.ofHours(24);
+    private DataSize uploadMaxSize = DataSize.ofGigabytes(10);
+    private boolean fixityCheckEnabled = false;
+    private Duration fixityCheckInterval = Duration.ofDays(7);
+    private int fixityCheckConcurrency = 2;
+    private DataSize fixityCheckMaxRate = DataSize.ofMegabytes(50);
+    private DataSize s3MultipartPartSize = DataSize.ofMegabytes(16);
+    private int s3MultipartConcurrency = 4;
+    private S3CredentialsProviderType s3CredentialsProvider = S3CredentialsProviderType.ANONYMOUS;
+    private int s3MaxConnections = 50;
+    private Duration s3ConnectionTimeout = Duration.ofSeconds(2);
+    private Duration s3ConnectionAcquisitionTimeout = Duration.ofSeconds(10);
+    private Duration s3SocketTimeout = Duration.ofSeconds(30);
+    private RetryMode s3RetryMode = RetryMode.STANDARD;
+    private int s3MaxRetries = 3;
+    private boolean s3ChecksumValidationEnabled = true;
+    private boolean s3PresignedDownloadEnabled = false;
+    private Duration s3PresignedDownloadExpiration = Duration.ofMinutes(5);
+    private DataSize s3PresignedDownloadMinSize = DataSize.ofMegabytes(1);
+    private boolean s3CacheEnabled = false;
+    private String s3CacheDir;
+    private DataSize s3CacheMaxSize = DataSize.ofGigabytes(1);
+    private Duration s3CacheMaxAge = Duration.ofDays(7);
 
     /**
      * Get the root directory for the File Service. This is the absolute path of the root directory.
@@ -123,6 +161,302 @@ public class StorageProperties {
         return Optional.ofNullable(s3Endpoint);
     }
 
+    /**
+     * Get the size of the parts of an S3 multipart upload. Files larger than the part size are uploaded to S3 as a
+     * multipart upload whose parts are sent concurrently. S3 requires parts, except the last, to be at least 5MB.
+     * The default is 16MB.
+     * @return The part size of S3 multipart uploads
+     */
+    public DataSize getS3MultipartPartSize() {
+        return s3MultipartPartSize;
+    }
+
+    /**
+     * Get the maximum number of parts of S3 multipart uploads that are uploaded at the same time. The default is 4.
+     * @return The concurrency of S3 multipart uploads
+     */
+    public int getS3MultipartConcurrency() {
+        return s3MultipartConcurrency;
+    }
+
+    /**
+     * Get how the File Service authenticates to S3. The default is ANONYMOUS.
+     * @return The type of the S3 credentials provider
+     */
+    public S3CredentialsProviderType getS3CredentialsProvider() {
+        return s3CredentialsProvider;
+    }
+
+    /**
+     * Get the maximum number of open HTTP connections to S3. Every concurrent upload, download and multipart upload
+     * part holds a connection while it is transferred. The default is 50.
+     * @return The size of the S3 connection pool
+     */
+    public int getS3MaxConnections() {
+        return s3MaxConnections;
+    }
+
+    /**
+     * Get the maximum time to establish a connection to S3. The default is 2 seconds.
+     * @return The S3 connection timeout
+     */
+    public Duration getS3ConnectionTimeout() {
+        return s3ConnectionTimeout;
+    }
+
+    /**
+     * Get the maximum time a request waits for a connection from the pool when all connections are in use.
+     * The default is 10 seconds.
+     * @return The S3 connection acquisition timeout
+     */
+    public Duration getS3ConnectionAcquisitionTimeout() {
+        return s3ConnectionAcquisitionTimeout;
+    }
+
+    /**
+     * Get the maximum time to wait for data on an open connection to S3. The default is 30 seconds.
+     * @return The S3 socket timeout
+     */
+    public Duration getS3SocketTimeout() {
+        return s3SocketTimeout;
+    }
+
+    /**
+     * Get the retry mode of failed S3 requests, one of LEGACY, STANDARD or ADAPTIVE of the AWS SDK. The default is
+     * STANDARD.
+     * @return The S3 retry mode
+     */
+    public RetryMode getS3RetryMode() {
+        return s3RetryMode;
+    }
+
+    /**
+     * Get the maximum number of times a failed S3 request is retried. The default is 3.
+     * @return The maximum number of S3 retries
+     */
+    public int getS3MaxRetries() {
+        return s3MaxRetries;
+    }
+
+    /**
+     * Get whether the checksums of content downloaded from and uploaded to S3 are validated by the S3 client.
+     * The default is true.
+     * @return True if S3 checksum validation is enabled
+     */
+    public boolean isS3ChecksumValidationEnabled() {
+        return s3ChecksumValidationEnabled;
+    }
+
+    /**
+     * Get whether downloads of files stored in S3 are redirected to a pre-signed URL of the content in the S3 bucket,
+     * so the content is not streamed through the File Service. The default is false.
+     * @return True if pre-signed downloads are enabled
+     */
+    public boolean isS3PresignedDownloadEnabled() {
+        return s3PresignedDownloadEnabled;
+    }
+
+    /**
+     * Get how long a pre-signed download URL is valid. The default is 5 minutes.
+     * @return The expiration of pre-signed download URLs
+     */
+    public Duration getS3PresignedDownloadExpiration() {
+        return s3PresignedDownloadExpiration;
+    }
+
+    /**
+     * Get the minimum size of a file whose download is redirected to a pre-signed URL. Smaller files are streamed
+     * through the File Service, which is faster than the additional round trip of the redirect. The default is 1MB.
+     * @return The minimum size of pre-signed downloads
+     */
+    public DataSize getS3PresignedDownloadMinSize() {
+        return s3PresignedDownloadMinSize;
+    }
+
+    /**
+     * Get whether the File Service is initialized in the background at startup, instead of on the first request.
+     * The default is false.
+     * @return True if eager initialization is enabled
+     */
+    public boolean isEagerInitEnabled() {
+        return eagerInitEnabled;
+    }
+
+    /**
+     * Get the maximum number of files whose metadata is kept in the in-memory metadata cache. When the cache is full
+     * the metadata of the least recently used file is evicted. The default is 10000.
+     * @return The capacity of the metadata cache
+     */
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Get whether files read from S3 are cached on local disk. The default is false.
+     * @return True if the local cache of S3 files is enabled
+     */
+    public boolean isS3CacheEnabled() {
+        return s3CacheEnabled;
+    }
+
+    /**
+     * Get the absolute path of the directory of the local cache of S3 files. If it is not set, the cache is a child
+     * directory of the root directory.
+     * @return The directory of the local cache of S3 files
+     */
+    public Optional<String> getS3CacheDir() {
+        return Optional.ofNullable(s3CacheDir).filter(dir -> !dir.isEmpty());
+    }
+
+    /**
+     * Get the capacity of the local cache of S3 files. When the cache exceeds its capacity the least recently read
+     * files are evicted. The default is 1GB.
+     * @return The capacity of the local cache of S3 files
+     */
+    public DataSize getS3CacheMaxSize() {
+        return s3CacheMaxSize;
+    }
+
+    /**
+     * Get how long a file may remain in the local cache of S3 files without being read. The default is 7 days.
+     * @return The maximum age of files in the local cache of S3 files
+     */
+    public Duration getS3CacheMaxAge() {
+        return s3CacheMaxAge;
+    }
+
+    /**
+     * Get whether uploaded files are deduplicated by content. If enabled, a file whose content is already stored
+     * references the stored content instead of storing it again. The default is false.
+     * @return True if deduplication of uploaded files is enabled
+     */
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    /**
+     * Get whether uploaded files of compressible mime types are compressed with gzip as they are stored. The
+     * default is false.
+     * @return True if compression of uploaded files is enabled
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Get the mime types of uploaded files that are compressed, a subtype may be the * wildcard. The default is
+     * text/*, application/xml and application/json.
+     * @return The compressible mime types
+     */
+    public List<String> getCompressionContentTypes() {
+        return compressionContentTypes;
+    }
+
+    /**
+     * Get the minimum size of an uploaded file that is compressed. Compressing smaller files saves little space.
+     * The default is 1KB.
+     * @return The minimum size of compressed files
+     */
+    public DataSize getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * Get the maximum number of files of batch uploads that are committed to the repository at the same time.
+     * The default is 4.
+     * @return The concurrency of batch uploads
+     */
+    public int getBatchUploadConcurrency() {
+        return batchUploadConcurrency;
+    }
+
+    /**
+     * Get the number of deleted files that are purged from the repository at the same time. The default is 2.
+     * @return The concurrency of purges
+     */
+    public int getPurgeConcurrency() {
+        return purgeConcurrency;
+    }
+
+    /**
+     * Get the delay before a failed purge of a deleted file is retried for the first time. The delay doubles with
+     * every further attempt, up to 1 hour. The default is 1 minute.
+     * @return The delay of the first retry of a failed purge
+     */
+    public Duration getPurgeRetryDelay() {
+        return purgeRetryDelay;
+    }
+
+    /**
+     * Get the number of attempts of the purge of a deleted file before it is given up and moved to the failed
+     * directory of the purge queue. The default is 10.
+     * @return The maximum number of attempts of a purge
+     */
+    public int getPurgeMaxAttempts() {
+        return purgeMaxAttempts;
+    }
+
+    /**
+     * Get how old a temporary file of the File Service must be before it is considered stale and deleted by the
+     * background cleanup. The default is 1 hour.
+     * @return The expiration of temporary files
+     */
+    public Duration getTempFileExpiration() {
+        return tempFileExpiration;
+    }
+
+    /**
+     * Get how long a chunked upload session may be inactive before it is considered abandoned and its staged
+     * chunks are deleted. The default is 24 hours.
+     * @return The expiration of inactive upload sessions
+     */
+    public Duration getUploadSessionExpiration() {
+        return uploadSessionExpiration;
+    }
+
+    /**
+     * Get the maximum size of a file that is uploaded in chunks. Upload sessions for larger files are refused. The
+     * default is 10GB.
+     * @return The maximum size of a chunked upload
+     */
+    public DataSize getUploadMaxSize() {
+        return uploadMaxSize;
+    }
+
+    /**
+     * Get whether the fixity of the stored content is checked periodically in the background. The default is false.
+     * @return True if the periodic fixity check is enabled
+     */
+    public boolean isFixityCheckEnabled() {
+        return fixityCheckEnabled;
+    }
+
+    /**
+     * Get the delay between the end of a periodic fixity check and the start of the next. The default is 7 days.
+     * @return The interval of the periodic fixity check
+     */
+    public Duration getFixityCheckInterval() {
+        return fixityCheckInterval;
+    }
+
+    /**
+     * Get the number of OCFL objects whose fixity is checked at the same time. It is limited to the number of cores.
+     * The default is 2.
+     * @return The concurrency of fixity checks
+     */
+    public int getFixityCheckConcurrency() {
+        return fixityCheckConcurrency;
+    }
+
+    /**
+     * Get the maximum amount of content read from storage per second by a fixity check, shared by all of its threads.
+     * Zero means the reads are not limited. The default is 50MB.
+     * @return The maximum read rate of fixity checks per second
+     */
+    public DataSize getFixityCheckMaxRate() {
+        return fixityCheckMaxRate;
+    }
+
     public void setRootDir(String rootDir) {
         this.rootDir = rootDir;
     }
@@ -147,4 +481,139 @@ public class StorageProperties {
         this.s3Endpoint = endpoint;
     }
 
+    public void setS3MultipartPartSize(DataSize s3MultipartPartSize) {
+        this.s3MultipartPartSize = s3MultipartPartSize;
+    }
+
+    public void setS3MultipartConcurrency(int s3MultipartConcurrency) {
+        this.s3MultipartConcurrency = s3MultipartConcurrency;
+    }
+
+    public void setS3CredentialsProvider(S3CredentialsProviderType s3CredentialsProvider) {
+        this.s3CredentialsProvider = s3CredentialsProvider;
+    }
+
+    public void setS3MaxConnections(int s3MaxConnections) {
+        this.s3MaxConnections = s3MaxConnections;
+    }
+
+    public void setS3ConnectionTimeout(Duration s3ConnectionTimeout) {
+        this.s3ConnectionTimeout = s3ConnectionTimeout;
+    }
+
+    public void setS3ConnectionAcquisitionTimeout(Duration s3ConnectionAcquisitionTimeout) {
+        this.s3ConnectionAcquisitionTimeout = s3ConnectionAcquisitionTimeout;
+    }
+
+    public void setS3SocketTimeout(Duration s3SocketTimeout) {
+        this.s3SocketTimeout = s3SocketTimeout;
+    }
+
+    public void setS3RetryMode(RetryMode s3RetryMode) {
+        this.s3RetryMode = s3RetryMode;
+    }
+
+    public void setS3MaxRetries(int s3MaxRetries) {
+        this.s3MaxRetries = s3MaxRetries;
+    }
+
+    public void setS3ChecksumValidationEnabled(boolean s3ChecksumValidationEnabled) {
+        this.s3ChecksumValidationEnabled = s3ChecksumValidationEnabled;
+    }
+
+    public void setS3PresignedDownloadEnabled(boolean s3PresignedDownloadEnabled) {
+        this.s3PresignedDownloadEnabled = s3PresignedDownloadEnabled;
+    }
+
+    public void setS3PresignedDownloadExpiration(Duration s3PresignedDownloadExpiration) {
+        this.s3PresignedDownloadExpiration = s3PresignedDownloadExpiration;
+    }
+
+    public void setS3PresignedDownloadMinSize(DataSize s3PresignedDownloadMinSize) {
+        this.s3PresignedDownloadMinSize = s3PresignedDownloadMinSize;
+    }
+
+    public void setEagerInitEnabled(boolean eagerInitEnabled) {
+        this.eagerInitEnabled = eagerInitEnabled;
+    }
+
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public void setS3CacheEnabled(boolean s3CacheEnabled) {
+        this.s3CacheEnabled = s3CacheEnabled;
+    }
+
+    public void setS3CacheDir(String s3CacheDir) {
+        this.s3CacheDir = s3CacheDir;
+    }
+
+    public void setS3CacheMaxSize(DataSize s3CacheMaxSize) {
+        this.s3CacheMaxSize = s3CacheMaxSize;
+    }
+
+    public void setS3CacheMaxAge(Duration s3CacheMaxAge) {
+        this.s3CacheMaxAge = s3CacheMaxAge;
+    }
+
+    public void setDedupEnabled(boolean dedupEnabled) {
+        this.dedupEnabled = dedupEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public void setCompressionContentTypes(List<String> compressionContentTypes) {
+        this.compressionContentTypes = compressionContentTypes;
+    }
+
+    public void setCompressionMinSize(DataSize compressionMinSize) {
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    public void setBatchUploadConcurrency(int batchUploadConcurrency) {
+        this.batchUploadConcurrency = batchUploadConcurrency;
+    }
+
+    public void setPurgeConcurrency(int purgeConcurrency) {
+        this.purgeConcurrency = purgeConcurrency;
+    }
+
+    public void setPurgeRetryDelay(Duration purgeRetryDelay) {
+        this.purgeRetryDelay = purgeRetryDelay;
+    }
+
+    public void setPurgeMaxAttempts(int purgeMaxAttempts) {
+        this.purgeMaxAttempts = purgeMaxAttempts;
+    }
+
+    public void setTempFileExpiration(Duration tempFileExpiration) {
+        this.tempFileExpiration = tempFileExpiration;
+    }
+
+    public void setUploadSessionExpiration(Duration uploadSessionExpiration) {
+        this.uploadSessionExpiration = uploadSessionExpiration;
+    }
+
+    public void setUploadMaxSize(DataSize uploadMaxSize) {
+        this.uploadMaxSize = uploadMaxSize;
+    }
+
+    public void setFixityCheckEnabled(boolean fixityCheckEnabled) {
+        this.fixityCheckEnabled = fixityCheckEnabled;
+    }
+
+    public void setFixityCheckInterval(Duration fixityCheckInterval) {
+        this.fixityCheckInterval = fixityCheckInterval;
+    }
+
+    public void setFixityCheckConcurrency(int fixityCheckConcurrency) {
+        this.fixityCheckConcurrency = fixityCheckConcurrency;
+    }
+
+    public void setFixityCheckMaxRate(DataSize fixityCheckMaxRate) {
+        this.fixityCheckMaxRate = fixityCheckMaxRate;
+    }
 }
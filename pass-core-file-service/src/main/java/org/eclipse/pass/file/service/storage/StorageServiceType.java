@@ -1,13 +1,15 @@
 package org.eclipse.pass.file.service.storage;
 
 /**
- * The StorageServiceType enum defines the type of storage supported by the File Service. The two types of
- * persistence are supported: File Systems and S3 buckets. These values are to be used in the environment var
- * configuration. If a new type of persistence is to be added, it must be added to this enum.
+ * The StorageServiceType enum defines the type of storage supported by the File Service. Three types of
+ * persistence are supported: OCFL repositories on File Systems and in S3 buckets, and plain File Systems without OCFL
+ * inventories. These values are to be used in the environment var configuration. If a new type of persistence is to be
+ * added, it must be added to this enum and implemented by a StorageBackend.
  */
 public enum StorageServiceType {
     FILE_SYSTEM("FILE_SYSTEM"),
-    S3("S3");
+    S3("S3"),
+    PLAIN_FILE_SYSTEM("PLAIN_FILE_SYSTEM");
 
     public final String label;
     private StorageServiceType(String label) {
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2023 Johns Hopkins University
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.eclipse.pass.file.service.storage;
+
+import java.util.Objects;
+
+/**
+ * An UploadSession is a representation of a chunked upload that is in progress. Chunks of the file are uploaded at an
+ * offset and staged until the session is completed, at which point the file is persisted into storage.
+ * When a request is made to the controller to create or query an upload, the controller will return an UploadSession.
+ *
+ * @author Tim Sanders
+ * @see ChunkedUploadService
+ */
+public class UploadSession {
+    private String uploadId;
+    private String fileName;
+    private Long size;
+    private Long receivedBytes;
+
+    /**
+     * Default Constructor which initializes the UploadSession with default value for member variables
+     */
+    public UploadSession() {
+        this.uploadId = "0";
+        this.fileName = "0";
+        this.size = 0L;
+        this.receivedBytes = 0L;
+    }
+
+    /**
+     * Initializes the UploadSession with the supplied arguments.
+     *
+     * @param uploadId The identifier of the upload session.
+     * @param fileName The original name of the file that is uploaded.
+     * @param size The total size of the file in bytes.
+     * @param receivedBytes The number of contiguous bytes, starting at offset 0, that have been received.
+     */
+    public UploadSession(String uploadId, String fileName, Long size, Long receivedBytes) {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.size = size;
+        this.receivedBytes = receivedBytes;
+    }
+
+    /**
+     * Get uploadId
+     * @return uploadId of the UploadSession
+     **/
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Set uploadId
+     * @param uploadId of the UploadSession
+     **/
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    /**
+     * Get fileName
+     * @return fileName of the UploadSession
+     **/
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Set fileName
+     * @param fileName of the UploadSession
+     **/
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Get size
+     * @return size of the UploadSession
+     **/
+    public Long getSize() {
+        return size;
+    }
+
+    /**
+     * Set size
+     * @param size of the UploadSession
+     **/
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    /**
+     * Get receivedBytes. A client resuming an upload should continue at this offset.
+     * @return receivedBytes of the UploadSession
+     **/
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * Set receivedBytes
+     * @param receivedBytes of the UploadSession
+     **/
+    public void setReceivedBytes(Long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    @Override
+    public boolean equals(java.lang.Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        UploadSession uploadSession = (UploadSession) o;
+        return Objects.equals(this.uploadId, uploadSession.uploadId) &&
+                Objects.equals(this.fileName, uploadSession.fileName) &&
+                Objects.equals(this.size, uploadSession.size) &&
+                Objects.equals(this.receivedBytes, uploadSession.receivedBytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uploadId, fileName, size, receivedBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "class UploadSession {\n" +
+                "    uploadId: " + uploadId + "\n" +
+                "    fileName: " + fileName + "\n" +
+                "    size: " + size + "\n" +
+                "    receivedBytes: " + receivedBytes + "\n" +
+                "}";
+    }
+}
@@ -13,8 +13,10 @@ import javax.json.JsonReader;
 import com.yahoo.elide.RefreshableElide;
 import okhttp3.Call;
 import okhttp3.HttpUrl;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.eclipse.pass.main.IntegrationTest;
 import org.eclipse.pass.object.ElideDataStorePassClient;
@@ -131,6 +133,34 @@ public class DoiServiceTest extends IntegrationTest {
         }
     }
 
+    /**
+     * throw in a batch with a duplicated "moo" doi, expect one 400 error line for it
+     *
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void invalidDoiBatchTest() throws Exception {
+
+        HttpUrl url = new HttpUrl.Builder()
+            .scheme("http")
+            .host("localhost")
+            .port(port)
+            .addPathSegments("doi/journal/batch")
+            .build();
+
+        Request okHttpRequest = new Request.Builder()
+            .url(url)
+            .post(RequestBody.create("[\"moo\", \"moo\"]", MediaType.get("application/json")))
+            .build();
+        Call call = httpClient.newCall(okHttpRequest);
+        try (Response okHttpResponse = call.execute()) {
+            assertEquals(200, okHttpResponse.code());
+            assert okHttpResponse.body() != null;
+            assertEquals("{\"doi\":\"moo\",\"status\":400,\"error\":\"Supplied DOI is not in valid DOI format.\"}\n",
+                         okHttpResponse.body().string());
+        }
+    }
+
     @Test
     public void realJournalTest() {
         String name = "Clinical Medicine Insights: Cardiology";
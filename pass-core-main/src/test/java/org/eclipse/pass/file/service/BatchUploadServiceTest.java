@@ -0,0 +1,100 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.pass.file.service.storage.BatchUploadResult;
+import org.eclipse.pass.file.service.storage.BatchUploadService;
+import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.StorageConfiguration;
+import org.eclipse.pass.file.service.storage.StorageProperties;
+import org.eclipse.pass.file.service.storage.StorageServiceType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+public class BatchUploadServiceTest {
+    private BatchUploadService batchUploadService;
+    private FileStorageService fileStorageService;
+    private final StorageProperties properties = new StorageProperties();
+    private final String rootDir = System.getProperty("java.io.tmpdir") + "/pass-batch-upload-test";
+
+    /**
+     * Setup the BatchUploadService for testing. Uses the system temp directory for the root directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStorageType(StorageServiceType.FILE_SYSTEM);
+        properties.setRootDir(rootDir);
+        properties.setBatchUploadConcurrency(3);
+        StorageConfiguration storageConfiguration = new StorageConfiguration(properties);
+        fileStorageService = new FileStorageService(storageConfiguration);
+        batchUploadService = new BatchUploadService(fileStorageService, storageConfiguration);
+    }
+
+    /**
+     * Cleanup after testing. Deletes the root directory.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        batchUploadService.shutdown();
+        FileSystemUtils.deleteRecursively(Paths.get(rootDir));
+    }
+
+    /**
+     * Many files are uploaded in one batch. Every file should be stored and the results should be in the order of
+     * the uploaded files.
+     */
+    @Test
+    void storeFilesShouldStoreAllFiles() throws IOException {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(new MockMultipartFile("files", "test" + i + ".txt", MediaType.TEXT_PLAIN_VALUE,
+                    ("Test Pass-core " + i).getBytes()));
+        }
+        List<BatchUploadResult> results = batchUploadService.storeFiles(files);
+        assertEquals(files.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            BatchUploadResult result = results.get(i);
+            assertEquals("test" + i + ".txt", result.getFileName());
+            assertEquals(HttpStatus.CREATED.value(), result.getStatus());
+            assertNull(result.getError());
+            assertArrayEquals(("Test Pass-core " + i).getBytes(), readFile(result.getStorageFile().getId()));
+        }
+    }
+
+    /**
+     * An empty file of a batch should fail on its own without affecting the other files.
+     */
+    @Test
+    void storeFilesShouldReportStatusPerFile() {
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "test.txt", MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()),
+                new MockMultipartFile("files", "empty.txt", MediaType.TEXT_PLAIN_VALUE, new byte[0]));
+        List<BatchUploadResult> results = batchUploadService.storeFiles(files);
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertNotNull(results.get(0).getStorageFile());
+        assertEquals(HttpStatus.BAD_REQUEST.value(), results.get(1).getStatus());
+        assertNull(results.get(1).getStorageFile());
+        assertNotNull(results.get(1).getError());
+    }
+
+    private byte[] readFile(String fileId) throws IOException {
+        try (InputStream fileStream = fileStorageService.getFileStream(fileId)) {
+            return fileStream.readAllBytes();
+        }
+    }
+}
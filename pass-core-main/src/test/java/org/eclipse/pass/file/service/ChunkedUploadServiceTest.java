@@ -0,0 +1,221 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.pass.file.service.storage.ChunkedUploadService;
+import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.StorageConfiguration;
+import org.eclipse.pass.file.service.storage.StorageFile;
+import org.eclipse.pass.file.service.storage.StorageProperties;
+import org.eclipse.pass.file.service.storage.StorageServiceType;
+import org.eclipse.pass.file.service.storage.UploadSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+public class ChunkedUploadServiceTest {
+    private ChunkedUploadService chunkedUploadService;
+    private FileStorageService fileStorageService;
+    private final StorageProperties properties = new StorageProperties();
+    private final String rootDir = System.getProperty("java.io.tmpdir") + "/pass-chunked-upload-test";
+    private final byte[] content = "Test Pass-core chunked upload content".getBytes();
+
+    /**
+     * Setup the ChunkedUploadService for testing. Uses the system temp directory for the root directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStorageType(StorageServiceType.FILE_SYSTEM);
+        properties.setRootDir(rootDir);
+        StorageConfiguration storageConfiguration = new StorageConfiguration(properties);
+        fileStorageService = new FileStorageService(storageConfiguration);
+        chunkedUploadService = new ChunkedUploadService(fileStorageService, storageConfiguration);
+    }
+
+    /**
+     * Cleanup after testing. Deletes the root directory.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        fileStorageService.shutdown();
+        FileSystemUtils.deleteRecursively(Paths.get(rootDir));
+    }
+
+    private InputStream chunk(int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(content, from, to));
+    }
+
+    /**
+     * Chunks are uploaded out of order, then the upload is completed. The stored file should match the content.
+     */
+    @Test
+    void completeUploadShouldStoreFile() throws IOException {
+        UploadSession session = chunkedUploadService.createUploadSession("test.txt", content.length);
+        chunkedUploadService.writeChunk(session.getUploadId(), 20, chunk(20, content.length));
+        assertEquals(0, chunkedUploadService.getUploadSession(session.getUploadId()).getReceivedBytes());
+        chunkedUploadService.writeChunk(session.getUploadId(), 0, chunk(0, 10));
+        assertEquals(10, chunkedUploadService.getUploadSession(session.getUploadId()).getReceivedBytes());
+        //overlaps the first chunk, as a client resending a range with different boundaries would
+        chunkedUploadService.writeChunk(session.getUploadId(), 5, chunk(5, 20));
+        assertEquals(content.length, chunkedUploadService.getUploadSession(session.getUploadId()).getReceivedBytes());
+
+        StorageFile storageFile = chunkedUploadService.completeUploadSession(session.getUploadId());
+        assertEquals("test.txt", storageFile.getFileName());
+        assertEquals(content.length, storageFile.getSize());
+        try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+            assertArrayEquals(content, fileStream.readAllBytes());
+        }
+        assertThrows(NoSuchFileException.class, () -> chunkedUploadService.getUploadSession(session.getUploadId()));
+    }
+
+    /**
+     * Completing an upload that is missing bytes should fail and keep the session so it can be resumed.
+     */
+    @Test
+    void completeIncompleteUploadShouldThrowException() throws IOException {
+        UploadSession session = chunkedUploadService.createUploadSession("test.txt", content.length);
+        chunkedUploadService.writeChunk(session.getUploadId(), 0, chunk(0, 10));
+        assertThrows(IllegalStateException.class,
+                () -> chunkedUploadService.completeUploadSession(session.getUploadId()));
+        assertEquals(10, chunkedUploadService.getUploadSession(session.getUploadId()).getReceivedBytes());
+    }
+
+    /**
+     * A chunk that extends past the declared size should be rejected.
+     */
+    @Test
+    void writeChunkPastSizeShouldThrowException() throws IOException {
+        UploadSession session = chunkedUploadService.createUploadSession("test.txt", 10);
+        assertThrows(IllegalArgumentException.class,
+                () -> chunkedUploadService.writeChunk(session.getUploadId(), 5, chunk(0, 10)));
+        assertEquals(0, chunkedUploadService.getUploadSession(session.getUploadId()).getReceivedBytes());
+    }
+
+    /**
+     * An upload larger than the configured maximum upload size should be rejected.
+     */
+    @Test
+    void createUploadLargerThanMaxSizeShouldThrowException() throws IOException {
+        properties.setUploadMaxSize(DataSize.ofBytes(content.length));
+        chunkedUploadService = new ChunkedUploadService(fileStorageService, new StorageConfiguration(properties));
+        assertThrows(MaxUploadSizeExceededException.class,
+                () -> chunkedUploadService.createUploadSession("test.txt", content.length + 1));
+        assertEquals(content.length,
+                chunkedUploadService.createUploadSession("test.txt", content.length).getSize());
+    }
+
+    /**
+     * A session left before a restart should be expired by the background cleanup of the FileStorageService once it
+     * starts, without the session being used.
+     */
+    @Test
+    void abandonedUploadShouldBeExpiredInBackground() throws Exception {
+        UploadSession abandoned = chunkedUploadService.createUploadSession("test.txt", content.length);
+        fileStorageService.shutdown();
+
+        properties.setUploadSessionExpiration(Duration.ZERO);
+        StorageConfiguration storageConfiguration = new StorageConfiguration(properties);
+        fileStorageService = new FileStorageService(storageConfiguration);
+        chunkedUploadService = new ChunkedUploadService(fileStorageService, storageConfiguration);
+        fileStorageService.setChunkedUploadService(chunkedUploadService);
+        //the session directory is polled, using the session would lock it and make the expiry skip it
+        Path sessionDir = Paths.get(rootDir, properties.getStorageWorkDir(), "uploads", abandoned.getUploadId());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (Files.exists(sessionDir) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(Files.exists(sessionDir));
+        assertThrows(NoSuchFileException.class, () -> chunkedUploadService.getUploadSession(abandoned.getUploadId()));
+    }
+
+    /**
+     * Aborted and expired sessions should no longer exist. Unknown upload IDs should not be found.
+     */
+    @Test
+    void abortedAndExpiredUploadsShouldNotExist() throws IOException {
+        UploadSession aborted = chunkedUploadService.createUploadSession("test.txt", content.length);
+        chunkedUploadService.abortUploadSession(aborted.getUploadId());
+        assertThrows(NoSuchFileException.class, () -> chunkedUploadService.getUploadSession(aborted.getUploadId()));
+        assertThrows(NoSuchFileException.class, () -> chunkedUploadService.getUploadSession("../ocfl"));
+
+        properties.setUploadSessionExpiration(Duration.ZERO);
+        chunkedUploadService = new ChunkedUploadService(fileStorageService, new StorageConfiguration(properties));
+        UploadSession expired = chunkedUploadService.createUploadSession("test.txt", content.length);
+        chunkedUploadService.expireUploadSessions();
+        assertThrows(NoSuchFileException.class, () -> chunkedUploadService.getUploadSession(expired.getUploadId()));
+    }
+
+    /**
+     * A session should not be expired while a chunk is written, and concurrent completions should store the file once.
+     */
+    @Test
+    void sessionInUseShouldNotBeExpiredOrCompletedTwice() throws Exception {
+        properties.setUploadSessionExpiration(Duration.ZERO);
+        chunkedUploadService = new ChunkedUploadService(fileStorageService, new StorageConfiguration(properties));
+        UploadSession session = chunkedUploadService.createUploadSession("test.txt", content.length);
+        CountDownLatch chunkStarted = new CountDownLatch(1);
+        CountDownLatch chunkReleased = new CountDownLatch(1);
+        InputStream slowChunk = new SequenceInputStream(chunk(0, 10), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                chunkStarted.countDown();
+                try {
+                    chunkReleased.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<UploadSession> write = executor.submit(
+                () -> chunkedUploadService.writeChunk(session.getUploadId(), 0, slowChunk));
+            chunkStarted.await();
+            chunkedUploadService.expireUploadSessions();
+            chunkReleased.countDown();
+            assertEquals(10, write.get().getReceivedBytes());
+
+            chunkedUploadService.writeChunk(session.getUploadId(), 10, chunk(10, content.length));
+            List<Future<StorageFile>> completions = List.of(
+                executor.submit(() -> chunkedUploadService.completeUploadSession(session.getUploadId())),
+                executor.submit(() -> chunkedUploadService.completeUploadSession(session.getUploadId())));
+            int completed = 0;
+            for (Future<StorageFile> completion : completions) {
+                try {
+                    assertEquals(content.length, completion.get().getSize());
+                    completed++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof NoSuchFileException);
+                }
+            }
+            assertEquals(1, completed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
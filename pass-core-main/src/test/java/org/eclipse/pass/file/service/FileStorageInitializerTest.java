@@ -0,0 +1,70 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.eclipse.pass.file.service.storage.FileStorageInitializer;
+import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.StorageConfiguration;
+import org.eclipse.pass.file.service.storage.StorageProperties;
+import org.eclipse.pass.file.service.storage.StorageServiceType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+public class FileStorageInitializerTest {
+    private FileStorageService fileStorageService;
+    private final StorageProperties properties = new StorageProperties();
+    private final String rootDir = System.getProperty("java.io.tmpdir") + "/pass-initializer-test";
+
+    /**
+     * Setup the FileStorageService for testing. Uses the system temp directory for the root directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStorageType(StorageServiceType.FILE_SYSTEM);
+        properties.setRootDir(rootDir);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+    }
+
+    /**
+     * Cleanup after testing. Deletes the root directory.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        fileStorageService.shutdown();
+        FileSystemUtils.deleteRecursively(Paths.get(rootDir));
+    }
+
+    /**
+     * With eager initialization the state should be INITIALIZING until the FileStorageService is initialized in the
+     * background, and then READY.
+     */
+    @Test
+    void eagerInitShouldReportReadiness() throws InterruptedException {
+        properties.setEagerInitEnabled(true);
+        FileStorageInitializer initializer = new FileStorageInitializer(fileStorageService,
+                new StorageConfiguration(properties));
+        assertEquals(FileStorageInitializer.State.INITIALIZING, initializer.getState());
+
+        initializer.onApplicationReady();
+        for (int i = 0; i < 100 && initializer.getState() == FileStorageInitializer.State.INITIALIZING; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(FileStorageInitializer.State.READY, initializer.getState());
+    }
+
+    /**
+     * Without eager initialization nothing should be initialized at startup.
+     */
+    @Test
+    void disabledEagerInitShouldNotInitialize() {
+        FileStorageInitializer initializer = new FileStorageInitializer(fileStorageService,
+                new StorageConfiguration(properties));
+        initializer.onApplicationReady();
+        assertEquals(FileStorageInitializer.State.DISABLED, initializer.getState());
+    }
+}
@@ -0,0 +1,133 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.FixityCheckService;
+import org.eclipse.pass.file.service.storage.FixityCheckStatus;
+import org.eclipse.pass.file.service.storage.StorageConfiguration;
+import org.eclipse.pass.file.service.storage.StorageFile;
+import org.eclipse.pass.file.service.storage.StorageProperties;
+import org.eclipse.pass.file.service.storage.StorageServiceType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+class FileStorageServicePlainTest {
+    private FileStorageService fileStorageService;
+    private final StorageProperties properties = new StorageProperties();
+    private final String rootDir = System.getProperty("java.io.tmpdir") + "/pass-plain-test";
+
+    /**
+     * Setup the FileStorageService with the PLAIN_FILE_SYSTEM storage type. Uses the system temp directory for the
+     * root directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStorageType(StorageServiceType.PLAIN_FILE_SYSTEM);
+        properties.setRootDir(rootDir);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+    }
+
+    /**
+     * Cleanup the FileStorageService after testing. Deletes the root directory.
+     */
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        awaitPurges();
+        fileStorageService.shutdown();
+        FileSystemUtils.deleteRecursively(Paths.get(rootDir));
+    }
+
+    /**
+     * A stored file should be read back with its digest, and its content should be stored in the plain directory
+     * without an OCFL inventory.
+     */
+    @Test
+    void storeFileShouldStoreWithoutOcfl() throws IOException {
+        byte[] content = "Test Pass-core".getBytes();
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        assertEquals(StorageServiceType.PLAIN_FILE_SYSTEM.label, storageFile.getStorageType());
+        assertArrayEquals(content, readFile(storageFile.getId()));
+        assertEquals(DigestUtils.sha512Hex(content), fileStorageService.getFileDigest(storageFile.getId()));
+        assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+
+        Path contentPath = fileStorageService.getFileSystemPath(storageFile.getId()).get();
+        assertTrue(contentPath.startsWith(Paths.get(rootDir, "plain")));
+        assertArrayEquals(content, Files.readAllBytes(contentPath));
+        assertFalse(Files.exists(Paths.get(rootDir, "ocfl")));
+        try (Stream<Path> files = Files.walk(Paths.get(rootDir, "plain"))) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith("inventory")));
+        }
+    }
+
+    /**
+     * A deleted file should not be found, and its content should be purged from the plain directory.
+     */
+    @Test
+    void deleteShouldPurgeContent() throws IOException, InterruptedException {
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
+        Path contentPath = fileStorageService.getFileSystemPath(storageFile.getId()).get();
+        fileStorageService.deleteFile(storageFile.getId());
+        assertThrows(IOException.class, () -> fileStorageService.getFileStream(storageFile.getId()));
+        awaitPurges();
+        assertFalse(Files.exists(contentPath));
+    }
+
+    /**
+     * Deduplication and fixity checks should work with the plain storage like with OCFL storage.
+     */
+    @Test
+    void dedupAndFixityCheckShouldWorkWithPlainStorage() throws IOException {
+        fileStorageService.shutdown();
+        properties.setDedupEnabled(true);
+        StorageConfiguration storageConfiguration = new StorageConfiguration(properties);
+        fileStorageService = new FileStorageService(storageConfiguration);
+        byte[] content = "Test Pass-core".getBytes();
+        StorageFile first = fileStorageService.storeFile(new MockMultipartFile("test", "first.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        StorageFile second = fileStorageService.storeFile(new MockMultipartFile("test", "second.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        assertEquals(fileStorageService.getFileSystemPath(first.getId()),
+                fileStorageService.getFileSystemPath(second.getId()));
+
+        FixityCheckService fixityCheckService = new FixityCheckService(fileStorageService, storageConfiguration);
+        try {
+            FixityCheckStatus status = fixityCheckService.runFixityCheck();
+            assertEquals(1, status.getObjectsChecked());
+            assertEquals(0, status.getObjectsFailed());
+        } finally {
+            fixityCheckService.shutdown();
+        }
+    }
+
+    private void awaitPurges() throws InterruptedException {
+        for (int i = 0; i < 100 && fileStorageService.getPendingPurgeCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, fileStorageService.getPendingPurgeCount());
+    }
+
+    private byte[] readFile(String fileId) throws IOException {
+        try (InputStream fileStream = fileStorageService.getFileStream(fileId)) {
+            return fileStream.readAllBytes();
+        }
+    }
+}
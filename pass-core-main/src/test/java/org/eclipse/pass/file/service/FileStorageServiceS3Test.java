@@ -1,18 +1,30 @@
 package org.eclipse.pass.file.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import edu.wisc.library.ocfl.api.exception.NotFoundException;
 import io.findify.s3mock.S3Mock;
 import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.S3CredentialsProviderType;
 import org.eclipse.pass.file.service.storage.StorageConfiguration;
 import org.eclipse.pass.file.service.storage.StorageFile;
 import org.eclipse.pass.file.service.storage.StorageProperties;
@@ -20,10 +32,12 @@ import org.eclipse.pass.file.service.storage.StorageServiceType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.retry.RetryMode;
 
 class FileStorageServiceS3Test {
     StorageConfiguration storageConfiguration;
@@ -80,6 +94,90 @@ class FileStorageServiceS3Test {
         }
     }
 
+    /**
+     * The S3 client should honor the connection pool, timeout, retry and checksum settings, and a bucket that does not
+     * exist yet should be created.
+     */
+    @Test
+    void storeFileToS3WithConfiguredClient() throws IOException {
+        properties.setS3BucketName("bucket-configured-client");
+        properties.setS3MaxConnections(2);
+        properties.setS3ConnectionTimeout(Duration.ofSeconds(1));
+        properties.setS3ConnectionAcquisitionTimeout(Duration.ofSeconds(5));
+        properties.setS3SocketTimeout(Duration.ofSeconds(5));
+        properties.setS3RetryMode(RetryMode.LEGACY);
+        properties.setS3MaxRetries(1);
+        properties.setS3ChecksumValidationEnabled(false);
+        properties.setS3CredentialsProvider(S3CredentialsProviderType.ANONYMOUS);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        byte[] content = "Test S3 Pass-core configured client".getBytes();
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+            assertArrayEquals(content, fileStream.readAllBytes());
+        }
+    }
+
+    /**
+     * With pre-signed downloads enabled, a file of at least the minimum size should have a pre-signed URL that
+     * downloads its content directly from S3, and a smaller file should not.
+     */
+    @Test
+    void getPresignedDownloadUrlShouldDownloadFromS3() throws IOException {
+        properties.setS3PresignedDownloadEnabled(true);
+        properties.setS3PresignedDownloadMinSize(DataSize.ofBytes(10));
+        assertThrows(IOException.class, () -> new FileStorageService(new StorageConfiguration(properties)));
+
+        //the mock accepts any credentials, which the default provider chain reads from the system properties
+        properties.setS3CredentialsProvider(S3CredentialsProviderType.DEFAULT);
+        System.setProperty("aws.accessKeyId", "test-access-key");
+        System.setProperty("aws.secretAccessKey", "test-secret-key");
+        try {
+            fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+            byte[] content = "Test S3 Pass-core pre-signed download".getBytes();
+            StorageFile largeFile = fileStorageService.storeFile(new MockMultipartFile("test", "large.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            StorageFile smallFile = fileStorageService.storeFile(new MockMultipartFile("test", "small.txt",
+                    MediaType.TEXT_PLAIN_VALUE, "Small".getBytes()));
+
+            Optional<URL> presignedUrl = fileStorageService.getPresignedDownloadUrl(largeFile.getId(),
+                    "attachment; filename=\"large.txt\"");
+            assertTrue(presignedUrl.isPresent());
+            assertTrue(presignedUrl.get().toString().startsWith(s3Endpoint));
+            assertTrue(presignedUrl.get().getPath().contains(s3Prefix + "/"
+                    + fileStorageService.getResourceFileRelativePath(largeFile.getId())));
+            try (InputStream urlStream = presignedUrl.get().openStream()) {
+                assertArrayEquals(content, urlStream.readAllBytes());
+            }
+            assertFalse(fileStorageService.getPresignedDownloadUrl(smallFile.getId(), "attachment").isPresent());
+        } finally {
+            System.clearProperty("aws.accessKeyId");
+            System.clearProperty("aws.secretAccessKey");
+        }
+    }
+
+    /**
+     * A file larger than the multipart part size is uploaded to S3 as a parallel multipart upload. The parts should be
+     * reassembled in order.
+     */
+    @Test
+    void storeFileToS3AsMultipartUpload() {
+        try {
+            properties.setS3MultipartPartSize(DataSize.ofBytes(4));
+            properties.setS3MultipartConcurrency(3);
+            fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+            byte[] content = "Test S3 Pass-core multipart upload".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+            try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+                assertArrayEquals(content, fileStream.readAllBytes());
+            }
+        } catch (IOException e) {
+            assertEquals("Exception during storeFileToS3AsMultipartUpload", e.getMessage());
+        }
+    }
+
     /**
      * Should get the file from the S3 bucket and return it.
      */
@@ -88,13 +186,189 @@ class FileStorageServiceS3Test {
         try {
             StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
                     MediaType.TEXT_PLAIN_VALUE, "Test S3 Pass-core".getBytes()));
-            ByteArrayResource file = fileStorageService.getFile(storageFile.getId());
+            Resource file = fileStorageService.getFileResource(storageFile.getId());
             assertTrue(file.contentLength() > 0);
         } catch (IOException e) {
             assertEquals("Exception during getFileShouldReturnFile", e.getMessage());
         }
     }
 
+    /**
+     * File is stored and then streamed back. The streamed content and reported size should match the upload.
+     */
+    @Test
+    void getFileStreamShouldReturnFileContent() {
+        try {
+            byte[] content = "Test S3 Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+                assertArrayEquals(content, fileStream.readAllBytes());
+            }
+            assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+        } catch (IOException e) {
+            assertEquals("Exception during getFileStreamShouldReturnFileContent", e.getMessage());
+        }
+    }
+
+    /**
+     * S3 content is not on local disk, so no file system path should be returned.
+     */
+    @Test
+    void getFileSystemPathShouldBeEmptyForS3() {
+        try {
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, "Test S3 Pass-core".getBytes()));
+            assertFalse(fileStorageService.getFileSystemPath(storageFile.getId()).isPresent());
+        } catch (IOException e) {
+            assertEquals("Exception during getFileSystemPathShouldBeEmptyForS3", e.getMessage());
+        }
+    }
+
+    /**
+     * With the local cache enabled, the first read fetches the file from S3 into the cache and later reads are served
+     * from the cached file on local disk. Deleting the file should remove it from the cache.
+     */
+    @Test
+    void getFileFromS3ShouldBeCachedLocally() {
+        try {
+            Path cacheDir = Paths.get(rootDir, "cache-test");
+            properties.setS3CacheEnabled(true);
+            properties.setS3CacheDir(cacheDir.toString());
+            fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+            byte[] content = "Test S3 Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            assertEquals(0, countFiles(cacheDir));
+
+            Optional<Path> cachedPath = fileStorageService.getFileSystemPath(storageFile.getId());
+            assertTrue(cachedPath.isPresent());
+            assertTrue(cachedPath.get().startsWith(cacheDir));
+            assertArrayEquals(content, Files.readAllBytes(cachedPath.get()));
+            try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+                assertArrayEquals(content, fileStream.readAllBytes());
+            }
+            assertArrayEquals(content, readFile(storageFile.getId()));
+            assertEquals(1, countFiles(cacheDir));
+
+            fileStorageService.deleteFile(storageFile.getId());
+            assertEquals(0, countFiles(cacheDir));
+        } catch (IOException e) {
+            assertEquals("Exception during getFileFromS3ShouldBeCachedLocally", e.getMessage());
+        }
+    }
+
+    /**
+     * The local cache should evict the least recently read file when its capacity is exceeded.
+     */
+    @Test
+    void localCacheShouldEvictWhenFull() {
+        try {
+            Path cacheDir = Paths.get(rootDir, "cache-test");
+            properties.setS3CacheEnabled(true);
+            properties.setS3CacheDir(cacheDir.toString());
+            properties.setS3CacheMaxSize(DataSize.ofBytes(20));
+            fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+            StorageFile firstFile = fileStorageService.storeFile(new MockMultipartFile("test", "first.txt",
+                    MediaType.TEXT_PLAIN_VALUE, "Test S3 Pass-core 1".getBytes()));
+            StorageFile secondFile = fileStorageService.storeFile(new MockMultipartFile("test", "second.txt",
+                    MediaType.TEXT_PLAIN_VALUE, "Test S3 Pass-core 2".getBytes()));
+
+            Path firstCachedPath = fileStorageService.getFileSystemPath(firstFile.getId()).get();
+            Files.setLastModifiedTime(firstCachedPath, FileTime.from(Instant.now().minusSeconds(60)));
+            Path secondCachedPath = fileStorageService.getFileSystemPath(secondFile.getId()).get();
+            assertFalse(Files.exists(firstCachedPath));
+            assertTrue(Files.exists(secondCachedPath));
+            assertEquals(1, countFiles(cacheDir));
+        } catch (IOException e) {
+            assertEquals("Exception during localCacheShouldEvictWhenFull", e.getMessage());
+        }
+    }
+
+    /**
+     * A file larger than the capacity of the local cache should not be cached, it should be streamed from S3.
+     */
+    @Test
+    void fileLargerThanLocalCacheShouldNotBeCached() {
+        try {
+            Path cacheDir = Paths.get(rootDir, "cache-test");
+            properties.setS3CacheEnabled(true);
+            properties.setS3CacheDir(cacheDir.toString());
+            properties.setS3CacheMaxSize(DataSize.ofBytes(10));
+            fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+            byte[] content = "Test S3 Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+
+            assertFalse(fileStorageService.getFileSystemPath(storageFile.getId()).isPresent());
+            try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+                assertArrayEquals(content, fileStream.readAllBytes());
+            }
+            assertEquals(0, countFiles(cacheDir));
+        } catch (IOException e) {
+            assertEquals("Exception during fileLargerThanLocalCacheShouldNotBeCached", e.getMessage());
+        }
+    }
+
+    private long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * File is stored and a Resource that streams it from S3 is returned. It should be readable more than once.
+     */
+    @Test
+    void getFileResourceFromS3ShouldReturnFile() {
+        try {
+            byte[] content = "Test S3 Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            Resource fileResource = fileStorageService.getFileResource(storageFile.getId());
+            assertEquals(content.length, fileResource.contentLength());
+            for (int i = 0; i < 2; i++) {
+                try (InputStream fileStream = fileResource.getInputStream()) {
+                    assertArrayEquals(content, fileStream.readAllBytes());
+                }
+            }
+        } catch (IOException e) {
+            assertEquals("Exception during getFileResourceFromS3ShouldReturnFile", e.getMessage());
+        }
+    }
+
+    /**
+     * A byte range of a file on S3 should be read from the start of the range, and a byte range of a compressed file
+     * should be decoded from the start and skip the bytes before the range.
+     */
+    @Test
+    void getFileResourceFromS3ShouldReadByteRanges() throws Exception {
+        fileStorageService.shutdown();
+        properties.setCompressionEnabled(true);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        byte[] pdfContent = ("%PDF-1.7 " + "Test Pass-core ".repeat(100)).getBytes();
+        StorageFile pdfFile = fileStorageService.storeFile(new MockMultipartFile("test", "paper.pdf",
+                MediaType.APPLICATION_PDF_VALUE, pdfContent));
+        byte[] csvContent = "id,title,doi\n1,Test Pass-core,10.1234/pass\n".repeat(100).getBytes();
+        StorageFile csvFile = fileStorageService.storeFile(new MockMultipartFile("test", "data.csv",
+                "text/csv", csvContent));
+        assertEquals(Optional.of("gzip"), fileStorageService.getFileContentEncoding(csvFile.getId()));
+
+        for (Map.Entry<StorageFile, byte[]> file : Map.of(pdfFile, pdfContent, csvFile, csvContent).entrySet()) {
+            Resource fileResource = fileStorageService.getFileResource(file.getKey().getId());
+            byte[] content = file.getValue();
+            try (InputStream fileStream = fileResource.getInputStream()) {
+                assertEquals(100, fileStream.skip(100));
+                assertArrayEquals(Arrays.copyOfRange(content, 100, 110), fileStream.readNBytes(10));
+            }
+            try (InputStream fileStream = fileResource.getInputStream()) {
+                assertEquals(content.length - 1, fileStream.skip(content.length - 1));
+                assertArrayEquals(Arrays.copyOfRange(content, content.length - 1, content.length),
+                        fileStream.readAllBytes());
+            }
+        }
+    }
+
     /**
      * Should throw an exception because the file ID does not exist.
      */
@@ -102,7 +376,7 @@ class FileStorageServiceS3Test {
     void getFileShouldThrowException() {
         Exception exception = assertThrows(IOException.class,
                 () -> {
-                    ByteArrayResource file = fileStorageService.getFile("12345");
+                    Resource file = fileStorageService.getFileResource("12345");
                 }
         );
         String expectedExceptionText = "File Service: The file could not be loaded";
@@ -164,4 +438,10 @@ class FileStorageServiceS3Test {
             assertEquals("Exception during deleteShouldThrowExceptionFileNotExist", e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private byte[] readFile(String fileId) throws IOException {
+        try (InputStream fileStream = fileStorageService.getFileStream(fileId)) {
+            return fileStream.readAllBytes();
+        }
+    }
+}
@@ -1,16 +1,39 @@
 package org.eclipse.pass.file.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import edu.wisc.library.ocfl.api.exception.NotFoundException;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.pass.file.service.storage.FileStorageService;
 import org.eclipse.pass.file.service.storage.StorageConfiguration;
 import org.eclipse.pass.file.service.storage.StorageFile;
@@ -19,7 +42,9 @@ import org.eclipse.pass.file.service.storage.StorageServiceType;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.util.FileSystemUtils;
@@ -49,7 +74,10 @@ public class FileStorageServiceTest {
      * Cleanup the FileStorageService after testing. Deletes the root directory.
      */
     @AfterEach
-    void tearDown() {
+    void tearDown() throws InterruptedException {
+        //background purges must not race the deletion of the root directory
+        awaitPurges(fileStorageService);
+        fileStorageService.shutdown();
         try {
             FileSystemUtils.deleteRecursively(Paths.get(rootDir));
         } catch (IOException e) {
@@ -72,6 +100,23 @@ public class FileStorageServiceTest {
         }
     }
 
+    /**
+     * The upload is streamed into the OCFL repository, so nothing should be staged in the temp directory.
+     */
+    @Test
+    void storeFileShouldNotStageInTempDir() {
+        try {
+            byte[] content = "Test Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            assertEquals(content.length, storageFile.getSize());
+            assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+            assertFalse(Files.exists(Paths.get(rootDir, properties.getStorageTempDir())));
+        } catch (IOException e) {
+            assertEquals("Exception during storeFileShouldNotStageInTempDir", e.getMessage());
+        }
+    }
+
     /**
      * File is stored and then retrieved.
      */
@@ -80,13 +125,342 @@ public class FileStorageServiceTest {
         try {
             StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
                     MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
-            ByteArrayResource file = fileStorageService.getFile(storageFile.getId());
+            Resource file = fileStorageService.getFileResource(storageFile.getId());
             assertTrue(file.contentLength() > 0);
         } catch (IOException e) {
             assertEquals("Exception during getFileShouldReturnFile", e.getMessage());
         }
     }
 
+    /**
+     * File is stored and then streamed back. The streamed content and reported size should match the upload.
+     */
+    @Test
+    void getFileStreamShouldReturnFileContent() {
+        try {
+            byte[] content = "Test Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            try (InputStream fileStream = fileStorageService.getFileStream(storageFile.getId())) {
+                assertArrayEquals(content, fileStream.readAllBytes());
+            }
+            assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+        } catch (IOException e) {
+            assertEquals("Exception during getFileStreamShouldReturnFileContent", e.getMessage());
+        }
+    }
+
+    /**
+     * File is stored and its content file should be resolvable on local disk in the OCFL storage root.
+     */
+    @Test
+    void getFileSystemPathShouldReturnContentFile() {
+        try {
+            byte[] content = "Test Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            Optional<Path> filePath = fileStorageService.getFileSystemPath(storageFile.getId());
+            assertTrue(filePath.isPresent());
+            assertTrue(filePath.get().startsWith(rootDir));
+            assertArrayEquals(content, Files.readAllBytes(filePath.get()));
+        } catch (IOException e) {
+            assertEquals("Exception during getFileSystemPathShouldReturnContentFile", e.getMessage());
+        }
+    }
+
+    /**
+     * File is stored and its Resource, digest and last modified time are returned. The digest should be the SHA-512
+     * of the content and the Resource should support reading a byte range.
+     */
+    @Test
+    void getFileResourceShouldReturnContentAndDigest() {
+        try {
+            byte[] content = "Test Pass-core".getBytes();
+            Instant beforeStore = Instant.now().minusSeconds(1);
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            Resource fileResource = fileStorageService.getFileResource(storageFile.getId());
+            assertEquals(content.length, fileResource.contentLength());
+            List<ResourceRegion> regions = HttpRange.toResourceRegions(HttpRange.parseRanges("bytes=5-8"),
+                    fileResource);
+            assertEquals(5, regions.get(0).getPosition());
+            assertEquals(4, regions.get(0).getCount());
+            String expectedDigest = DigestUtils.sha512Hex(content);
+            assertEquals(expectedDigest, fileStorageService.getFileDigest(storageFile.getId()));
+            assertFalse(fileStorageService.getFileLastModified(storageFile.getId()).isBefore(beforeStore));
+        } catch (IOException e) {
+            assertEquals("Exception during getFileResourceShouldReturnContentAndDigest", e.getMessage());
+        }
+    }
+
+    /**
+     * The metadata of a stored file is cached. Deleting the file should invalidate its metadata, so lookups of the
+     * deleted file should fail instead of returning the cached metadata.
+     */
+    @Test
+    void deleteShouldInvalidateCachedMetadata() {
+        try {
+            byte[] content = "Test Pass-core".getBytes();
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                    MediaType.TEXT_PLAIN_VALUE, content));
+            assertEquals(DigestUtils.sha512Hex(content), fileStorageService.getFileDigest(storageFile.getId()));
+            assertEquals(content.length, fileStorageService.getFileSize(storageFile.getId()));
+            assertEquals(MediaType.TEXT_PLAIN_VALUE, fileStorageService.getFileContentType(storageFile.getId()));
+            fileStorageService.deleteFile(storageFile.getId());
+            assertThrows(NotFoundException.class, () -> fileStorageService.getFileDigest(storageFile.getId()));
+            assertThrows(IOException.class, () -> fileStorageService.getFileSize(storageFile.getId()));
+        } catch (IOException e) {
+            assertEquals("Exception during deleteShouldInvalidateCachedMetadata", e.getMessage());
+        }
+    }
+
+    /**
+     * Files are no longer staged in the temp directory, so many concurrent downloads of the same and different files
+     * should all return the correct content.
+     */
+    @Test
+    void getFileShouldBeSafeUnderConcurrentRequests() throws Exception {
+        List<StorageFile> storageFiles = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            storageFiles.add(fileStorageService.storeFile(new MockMultipartFile("test", "test" + i + ".txt",
+                    MediaType.TEXT_PLAIN_VALUE, ("Test Pass-core " + i).getBytes())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> downloads = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String fileId = storageFiles.get(i % storageFiles.size()).getId();
+                downloads.add(executor.submit(() -> readFile(fileId)));
+            }
+            for (int i = 0; i < downloads.size(); i++) {
+                assertArrayEquals(("Test Pass-core " + (i % storageFiles.size())).getBytes(),
+                        downloads.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The background cleanup should delete stale files in the temp directory and keep recent ones.
+     */
+    @Test
+    void cleanupTempFilesShouldDeleteStaleFiles() throws IOException {
+        Path tempDir = Paths.get(rootDir, properties.getStorageTempDir());
+        Path staleDir = Files.createDirectories(tempDir.resolve("stale"));
+        Files.writeString(staleDir.resolve("test.txt"), "Test Pass-core");
+        Files.setLastModifiedTime(staleDir, FileTime.from(Instant.now().minus(properties.getTempFileExpiration())
+                .minusSeconds(60)));
+        Path recentDir = Files.createDirectories(tempDir.resolve("recent"));
+        fileStorageService.cleanupTempFiles();
+        assertFalse(Files.exists(staleDir));
+        assertTrue(Files.exists(recentDir));
+    }
+
+    /**
+     * Files are streamed into a zip archive. Every entry of the archive should have the content of its file.
+     */
+    @Test
+    void writeZipArchiveShouldContainAllFiles() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test" + i + ".txt",
+                    MediaType.TEXT_PLAIN_VALUE, ("Test Pass-core " + i).getBytes()));
+            entries.put("test" + i + ".txt", storageFile.getId());
+        }
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        fileStorageService.writeZipArchive(entries, archive);
+
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            for (int i = 0; i < 3; i++) {
+                ZipEntry zipEntry = zipStream.getNextEntry();
+                assertEquals("test" + i + ".txt", zipEntry.getName());
+                assertArrayEquals(("Test Pass-core " + i).getBytes(), zipStream.readAllBytes());
+            }
+            assertNull(zipStream.getNextEntry());
+        }
+    }
+
+    /**
+     * With deduplication enabled, uploads of the same content should share one OCFL object. The content should stay
+     * available until the last file referencing it is deleted.
+     */
+    @Test
+    void storeFileWithDedupShouldReuseContent() throws Exception {
+        properties.setDedupEnabled(true);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        byte[] content = "Test Pass-core".getBytes();
+        StorageFile firstFile = fileStorageService.storeFile(new MockMultipartFile("test", "first.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        StorageFile secondFile = fileStorageService.storeFile(new MockMultipartFile("test", "second.txt",
+                MediaType.TEXT_PLAIN_VALUE, content));
+        StorageFile otherFile = fileStorageService.storeFile(new MockMultipartFile("test", "other.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Other Pass-core".getBytes()));
+
+        assertFalse(firstFile.getId().equals(secondFile.getId()));
+        String contentPath = fileStorageService.getResourceFileRelativePath(firstFile.getId());
+        assertEquals(contentPath, fileStorageService.getResourceFileRelativePath(secondFile.getId()));
+        assertFalse(contentPath.equals(fileStorageService.getResourceFileRelativePath(otherFile.getId())));
+
+        fileStorageService.deleteFile(firstFile.getId());
+        assertArrayEquals(content, readFile(secondFile.getId()));
+        assertThrows(NotFoundException.class,
+                () -> fileStorageService.getResourceFileRelativePath(firstFile.getId()));
+
+        fileStorageService.deleteFile(secondFile.getId());
+        assertThrows(NotFoundException.class,
+                () -> fileStorageService.getResourceFileRelativePath(secondFile.getId()));
+        awaitPurges(fileStorageService);
+        assertFalse(Files.exists(Paths.get(rootDir, properties.getStorageOcflDir(), contentPath)));
+    }
+
+    /**
+     * A deleted file is not found immediately, and its content is purged from the repository in the background.
+     */
+    @Test
+    void deleteShouldPurgeContentInBackground() throws Exception {
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
+        Path contentPath = fileStorageService.getFileSystemPath(storageFile.getId()).get();
+        fileStorageService.deleteFile(storageFile.getId());
+        assertThrows(IOException.class, () -> fileStorageService.getFileStream(storageFile.getId()));
+        awaitPurges(fileStorageService);
+        assertFalse(Files.exists(contentPath));
+    }
+
+    /**
+     * Purges that are queued when the service stops should be resumed by the next service on the same root directory.
+     */
+    @Test
+    void queuedPurgesShouldResumeAfterRestart() throws Exception {
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
+        Path contentPath = fileStorageService.getFileSystemPath(storageFile.getId()).get();
+        fileStorageService.shutdown();
+        fileStorageService.deleteFile(storageFile.getId());
+        assertTrue(Files.exists(contentPath));
+
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        assertThrows(NotFoundException.class,
+                () -> fileStorageService.getResourceFileRelativePath(storageFile.getId()));
+        awaitPurges(fileStorageService);
+        assertFalse(Files.exists(contentPath));
+    }
+
+    /**
+     * Deleting a fileId that does not exist should not queue a purge.
+     */
+    @Test
+    void deleteOfUnknownFileShouldNotQueuePurge() throws Exception {
+        fileStorageService.deleteFile("12345/none.txt");
+        assertEquals(0, fileStorageService.getPendingPurgeCount());
+        try (Stream<Path> entries = Files.list(Paths.get(rootDir, "purge-queue"))) {
+            assertEquals(0, entries.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * A purge that failed on every attempt should be reported as failed after a restart, its file should stay
+     * deleted, and deleting the file again should queue the purge again.
+     */
+    @Test
+    void failedPurgeShouldBeReportedAndQueuedAgainOnDelete() throws Exception {
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
+        Path contentPath = fileStorageService.getFileSystemPath(storageFile.getId()).get();
+        fileStorageService.shutdown();
+        //the entry of a failed purge is named like the entry of a queued purge
+        String entryName = UUID.nameUUIDFromBytes(storageFile.getId().getBytes(StandardCharsets.UTF_8)) + ".purge";
+        Files.writeString(Paths.get(rootDir, "purge-queue", "failed", entryName), storageFile.getId());
+
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        assertEquals(1, fileStorageService.getFailedPurgeCount());
+        assertEquals(0, fileStorageService.getPendingPurgeCount());
+        assertThrows(NotFoundException.class,
+                () -> fileStorageService.getResourceFileRelativePath(storageFile.getId()));
+        assertTrue(Files.exists(contentPath));
+
+        fileStorageService.deleteFile(storageFile.getId());
+        assertEquals(0, fileStorageService.getFailedPurgeCount());
+        awaitPurges(fileStorageService);
+        assertFalse(Files.exists(contentPath));
+    }
+
+    /**
+     * The mime type should be detected from the content when the file is stored, and be read back from the stored
+     * object by a new service on the same root directory, which has no cached metadata. The object should only hold
+     * the content file.
+     */
+    @Test
+    void storeFileShouldDetectAndPersistContentType() throws Exception {
+        StorageFile pdfFile = fileStorageService.storeFile(new MockMultipartFile("test", "paper.dat",
+                MediaType.APPLICATION_OCTET_STREAM_VALUE, "%PDF-1.7 Test Pass-core".getBytes()));
+        StorageFile binaryFile = fileStorageService.storeFile(new MockMultipartFile("test", "data",
+                MediaType.APPLICATION_OCTET_STREAM_VALUE, new byte[] {0, 1, 2, 3}));
+        assertEquals(MediaType.APPLICATION_PDF_VALUE, pdfFile.getMimeType());
+        assertEquals(MediaType.APPLICATION_PDF_VALUE, fileStorageService.getFileContentType(pdfFile.getId()));
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE, binaryFile.getMimeType());
+
+        fileStorageService.shutdown();
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        assertEquals(MediaType.APPLICATION_PDF_VALUE, fileStorageService.getFileContentType(pdfFile.getId()));
+        assertEquals(MediaType.APPLICATION_OCTET_STREAM_VALUE,
+                fileStorageService.getFileContentType(binaryFile.getId()));
+        assertArrayEquals("%PDF-1.7 Test Pass-core".getBytes(), readFile(pdfFile.getId()));
+        try (Stream<Path> objectFiles = Files.walk(Paths.get(rootDir, properties.getStorageOcflDir()))) {
+            assertEquals(0, objectFiles.filter(file -> file.toString().contains("/content/"))
+                    .filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith(pdfFile.getUuid())
+                            && !file.getFileName().toString().startsWith(binaryFile.getUuid()))
+                    .count());
+        }
+    }
+
+    /**
+     * With compression enabled, a file of a compressible type should be stored compressed and read back as uploaded,
+     * also by a new service on the same root directory, while a file of another type should be stored as uploaded.
+     */
+    @Test
+    void storeFileWithCompressionShouldCompressTextFiles() throws Exception {
+        fileStorageService.shutdown();
+        properties.setCompressionEnabled(true);
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        byte[] csvContent = "id,title,doi\n1,Test Pass-core,10.1234/pass\n".repeat(100).getBytes();
+        StorageFile csvFile = fileStorageService.storeFile(new MockMultipartFile("test", "data.csv",
+                "text/csv", csvContent));
+        byte[] pdfContent = ("%PDF-1.7 " + "Test Pass-core ".repeat(100)).getBytes();
+        StorageFile pdfFile = fileStorageService.storeFile(new MockMultipartFile("test", "paper.pdf",
+                MediaType.APPLICATION_PDF_VALUE, pdfContent));
+
+        assertEquals(Optional.of("gzip"), fileStorageService.getFileContentEncoding(csvFile.getId()));
+        assertEquals(Optional.empty(), fileStorageService.getFileContentEncoding(pdfFile.getId()));
+        assertEquals(Optional.empty(), fileStorageService.getFileSystemPath(csvFile.getId()));
+        assertTrue(fileStorageService.getFileSystemPath(pdfFile.getId()).isPresent());
+        try (InputStream encodedStream = fileStorageService.getEncodedFileStream(csvFile.getId())) {
+            byte[] encodedContent = encodedStream.readAllBytes();
+            assertTrue(encodedContent.length < csvContent.length);
+            try (InputStream decodedStream = new GZIPInputStream(new ByteArrayInputStream(encodedContent))) {
+                assertArrayEquals(csvContent, decodedStream.readAllBytes());
+            }
+        }
+
+        fileStorageService.shutdown();
+        fileStorageService = new FileStorageService(new StorageConfiguration(properties));
+        assertEquals(csvContent.length, fileStorageService.getFileSize(csvFile.getId()));
+        assertEquals("text/csv", fileStorageService.getFileContentType(csvFile.getId()));
+        assertArrayEquals(csvContent, readFile(csvFile.getId()));
+        assertArrayEquals(csvContent, fileStorageService.getFileResource(csvFile.getId()).getInputStream()
+                .readAllBytes());
+        assertArrayEquals(pdfContent, readFile(pdfFile.getId()));
+    }
+
+    private void awaitPurges(FileStorageService fileStorageService) throws InterruptedException {
+        for (int i = 0; i < 100 && fileStorageService.getPendingPurgeCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, fileStorageService.getPendingPurgeCount());
+    }
+
     /**
      * Should throw exception because file ID does not exist
      */
@@ -94,7 +468,7 @@ public class FileStorageServiceTest {
     void getFileShouldThrowException() {
         Exception exception = assertThrows(IOException.class,
                 () -> {
-                    ByteArrayResource file = fileStorageService.getFile("12345");
+                    Resource file = fileStorageService.getFileResource("12345");
                 }
         );
         String expectedExceptionText = "File Service: The file could not be loaded";
@@ -155,4 +529,9 @@ public class FileStorageServiceTest {
         }
     }
 
+    private byte[] readFile(String fileId) throws IOException {
+        try (InputStream fileStream = fileStorageService.getFileStream(fileId)) {
+            return fileStream.readAllBytes();
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.pass.file.service.storage.FileStorageService;
+import org.eclipse.pass.file.service.storage.FixityCheckService;
+import org.eclipse.pass.file.service.storage.FixityCheckStatus;
+import org.eclipse.pass.file.service.storage.StorageConfiguration;
+import org.eclipse.pass.file.service.storage.StorageFile;
+import org.eclipse.pass.file.service.storage.StorageProperties;
+import org.eclipse.pass.file.service.storage.StorageServiceType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+public class FixityCheckServiceTest {
+    private FixityCheckService fixityCheckService;
+    private FileStorageService fileStorageService;
+    private final StorageProperties properties = new StorageProperties();
+    private final String rootDir = System.getProperty("java.io.tmpdir") + "/pass-fixity-check-test";
+
+    /**
+     * Setup the FixityCheckService for testing. Uses the system temp directory for the root directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setStorageType(StorageServiceType.FILE_SYSTEM);
+        properties.setRootDir(rootDir);
+        properties.setFixityCheckConcurrency(2);
+        StorageConfiguration storageConfiguration = new StorageConfiguration(properties);
+        fileStorageService = new FileStorageService(storageConfiguration);
+        fixityCheckService = new FixityCheckService(fileStorageService, storageConfiguration);
+    }
+
+    /**
+     * Cleanup after testing. Deletes the root directory.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        fixityCheckService.shutdown();
+        fileStorageService.shutdown();
+        FileSystemUtils.deleteRecursively(Paths.get(rootDir));
+    }
+
+    /**
+     * Every stored file should be checked, and a file whose content was altered on disk should be reported as a
+     * failure while the other files pass.
+     */
+    @Test
+    void fixityCheckShouldReportAlteredContent() throws IOException {
+        List<StorageFile> storageFiles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            storageFiles.add(fileStorageService.storeFile(new MockMultipartFile("test", "test" + i + ".txt",
+                    MediaType.TEXT_PLAIN_VALUE, ("Test Pass-core " + i).getBytes())));
+        }
+        String alteredFileId = storageFiles.get(2).getId();
+        Path alteredPath = fileStorageService.getFileSystemPath(alteredFileId).get();
+        Files.write(alteredPath, "Altered Pass-core".getBytes());
+
+        FixityCheckStatus status = fixityCheckService.runFixityCheck();
+        assertFalse(status.getRunning());
+        assertNotNull(status.getEndTime());
+        assertEquals(5, status.getObjectsChecked());
+        assertEquals(1, status.getObjectsFailed());
+        assertEquals(1, status.getFailures().size());
+        assertTrue(status.getFailures().containsKey(alteredFileId));
+        assertEquals(status, fixityCheckService.getStatus());
+    }
+
+    /**
+     * Deleted files that are waiting to be purged should not be checked or reported as failures.
+     */
+    @Test
+    void fixityCheckShouldSkipDeletedFiles() throws IOException {
+        StorageFile storageFile = fileStorageService.storeFile(new MockMultipartFile("test", "test.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Test Pass-core".getBytes()));
+        fileStorageService.storeFile(new MockMultipartFile("test", "other.txt",
+                MediaType.TEXT_PLAIN_VALUE, "Other Pass-core".getBytes()));
+        fileStorageService.deleteFile(storageFile.getId());
+
+        FixityCheckStatus status = fixityCheckService.runFixityCheck();
+        assertEquals(1, status.getObjectsChecked());
+        assertEquals(0, status.getObjectsFailed());
+        assertEquals("Other Pass-core".getBytes().length, status.getBytesChecked());
+    }
+}
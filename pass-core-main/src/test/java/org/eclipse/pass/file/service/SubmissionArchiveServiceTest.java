@@ -0,0 +1,41 @@
+package org.eclipse.pass.file.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class SubmissionArchiveServiceTest {
+
+    /**
+     * Entry names should not contain directories, so an entry cannot be extracted outside of the target directory.
+     */
+    @Test
+    void entryNamesShouldBeStrippedOfPaths() {
+        Set<String> usedNames = new HashSet<>();
+        assertEquals("x.pdf", SubmissionArchiveService.getEntryName("../../x.pdf", "orig.pdf", usedNames));
+        assertEquals("passwd", SubmissionArchiveService.getEntryName("/etc/passwd", "orig.pdf", usedNames));
+        assertEquals("x.pdf", SubmissionArchiveService.getEntryName("C:\\dir\\..\\x.pdf", "orig.pdf", usedNames));
+        assertEquals("x.pdf", SubmissionArchiveService.getEntryName("C:x.pdf", "orig.pdf", usedNames));
+        assertEquals("orig.pdf", SubmissionArchiveService.getEntryName("..", "orig.pdf", usedNames));
+        assertEquals("orig.pdf", SubmissionArchiveService.getEntryName(null, "orig.pdf", usedNames));
+        assertEquals("file", SubmissionArchiveService.getEntryName("", "/", usedNames));
+    }
+
+    /**
+     * Files with the same name should get numbered suffixes before their extension.
+     */
+    @Test
+    void duplicateEntryNamesShouldBeNumbered() {
+        Set<String> usedNames = new HashSet<>();
+        for (String expected : new String[] {"paper.pdf", "paper (2).pdf", "paper (3).pdf"}) {
+            String entryName = SubmissionArchiveService.getEntryName("paper.pdf", "orig.pdf", usedNames);
+            assertEquals(expected, entryName);
+            usedNames.add(entryName);
+        }
+        usedNames.add("data");
+        assertEquals("data (2)", SubmissionArchiveService.getEntryName("dir/data", "orig", usedNames));
+    }
+}